@@ -0,0 +1,98 @@
+package uj.wmii.pwj.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation per task of the regular and the pooled submission paths; read {@code gc.alloc.rate.norm}
+ * from the {@code gc} profiler, which the Gradle configuration enables. The pooled paths of
+ * {@link RingBufferExecService} should stay close to zero bytes per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class AllocationBenchmark {
+
+    private static final int BATCH = 1_000;
+    private static final Callable<Boolean> TASK = () -> Boolean.TRUE;
+
+    private MyExecService linked;
+    private RingBufferExecService ring;
+    private CountDownLatch batchDone;
+    private final Runnable countDown = () -> batchDone.countDown();
+    private final Completion<Boolean> completion = (result, failure) -> batchDone.countDown();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        linked = MyExecService.newInstance();
+        ring = RingBufferExecService.newInstance(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        for (ExecutorService executor : new ExecutorService[]{linked, ring}) {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void executeLinked() throws InterruptedException {
+        executeBatch(linked);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void executeRing() throws InterruptedException {
+        executeBatch(ring);
+    }
+
+    @Benchmark
+    public Boolean submitLinked() throws ExecutionException, InterruptedException {
+        Future<Boolean> future = linked.submit(TASK);
+        return future.get();
+    }
+
+    @Benchmark
+    public Boolean submitPooled() throws ExecutionException, InterruptedException {
+        PooledFuture<Boolean> future = ring.submitPooled(TASK);
+        Boolean result = future.get();
+        future.recycle();
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void executeWithCompletion() throws InterruptedException {
+        batchDone = new CountDownLatch(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            ring.execute(TASK, completion);
+        }
+        batchDone.await();
+    }
+
+    private void executeBatch(ExecutorService executor) throws InterruptedException {
+        // One latch per thousand tasks keeps the harness's own allocation out of the per-task figure.
+        batchDone = new CountDownLatch(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            executor.execute(countDown);
+        }
+        batchDone.await();
+    }
+}
@@ -0,0 +1,76 @@
+package uj.wmii.pwj.exec;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Executors compared by the benchmarks: ours next to the JDK ones as baselines. Run them all with
+ * {@code ./gradlew jmh}, or pick some with e.g. {@code -Pjmh.includes=RoundTrip}.
+ */
+public enum ExecutorKind {
+    MY_SINGLE {
+        @Override
+        ExecutorService create() {
+            return MyExecService.newInstance();
+        }
+    },
+    MY_POOL {
+        @Override
+        ExecutorService create() {
+            return MyExecService.newInstance(THREADS);
+        }
+    },
+    MY_RING {
+        @Override
+        ExecutorService create() {
+            return RingBufferExecService.newInstance(THREADS);
+        }
+    },
+    MY_LOCK_FREE {
+        @Override
+        ExecutorService create() {
+            return MyExecService.newLockFreeInstance();
+        }
+    },
+    MY_WORK_STEALING {
+        @Override
+        ExecutorService create() {
+            return WorkStealingExecService.newInstance(THREADS);
+        }
+    },
+    MY_VIRTUAL {
+        @Override
+        ExecutorService create() {
+            return VirtualThreadExecService.newInstance();
+        }
+    },
+    JDK_SINGLE {
+        @Override
+        ExecutorService create() {
+            return Executors.newSingleThreadExecutor();
+        }
+    },
+    JDK_FIXED_POOL {
+        @Override
+        ExecutorService create() {
+            return Executors.newFixedThreadPool(THREADS);
+        }
+    },
+    JDK_FORK_JOIN {
+        @Override
+        ExecutorService create() {
+            return new ForkJoinPool(THREADS);
+        }
+    },
+    JDK_VIRTUAL {
+        @Override
+        ExecutorService create() {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+    };
+
+    static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    abstract ExecutorService create();
+}
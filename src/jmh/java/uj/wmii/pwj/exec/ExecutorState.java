@@ -0,0 +1,36 @@
+package uj.wmii.pwj.exec;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One executor per trial, shared by all benchmark threads. Runs once for every {@link ExecutorKind}.
+ */
+@State(Scope.Benchmark)
+public class ExecutorState {
+
+    @Param
+    public ExecutorKind kind;
+
+    public ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = kind.create();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(kind + " did not terminate");
+        }
+    }
+}
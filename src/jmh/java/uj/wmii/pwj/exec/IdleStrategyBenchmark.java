@@ -0,0 +1,64 @@
+package uj.wmii.pwj.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Round-trip latency after an idle gap, per {@link IdleStrategy}. The gap makes a blocking worker go to
+ * sleep before every task; the queue-wait histogram printed at tear-down isolates the hand-off itself.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class IdleStrategyBenchmark {
+
+    private static final Callable<Boolean> EMPTY = () -> Boolean.TRUE;
+
+    @Param({"BLOCKING", "BUSY_SPIN", "SPIN_THEN_YIELD", "BACKOFF"})
+    public String strategy;
+
+    @Param({"0", "100"})
+    public int gapMicros;
+
+    private MyExecService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        IdleStrategy idleStrategy = switch (strategy) {
+            case "BLOCKING" -> IdleStrategy.blocking();
+            case "BUSY_SPIN" -> IdleStrategy.busySpin();
+            case "SPIN_THEN_YIELD" -> IdleStrategy.spinThenYield(10_000);
+            case "BACKOFF" -> IdleStrategy.backoff(10_000, 100, 10, 1000, TimeUnit.MICROSECONDS);
+            default -> throw new IllegalArgumentException(strategy);
+        };
+        executor = MyExecService.builder().idleStrategy(idleStrategy).metrics(true).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        System.out.println(strategy + " queue wait: " + executor.metrics().queueWait());
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Boolean roundTripAfterGap() throws ExecutionException, InterruptedException {
+        if (gapMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(gapMicros));
+        }
+        return executor.submit(EMPTY).get();
+    }
+}
@@ -0,0 +1,47 @@
+package uj.wmii.pwj.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to run {@code invokeAll} over 10k trivial tasks and collect every result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class InvokeAllBenchmark {
+
+    private static final int TASKS = 10_000;
+
+    private List<Callable<Integer>> tasks;
+
+    @Setup
+    public void setUp() {
+        tasks = new ArrayList<>(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            int value = i;
+            tasks.add(() -> value);
+        }
+    }
+
+    @Benchmark
+    public long invokeAll(ExecutorState state) throws ExecutionException, InterruptedException {
+        long sum = 0;
+        for (Future<Integer> future : state.executor.invokeAll(tasks)) {
+            sum += future.get();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,57 @@
+package uj.wmii.pwj.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to the first result of {@code invokeAny} over tasks of increasing length. The losers poll their
+ * interrupt flag, so an executor that cancels them promptly is ready for the next invocation sooner.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class InvokeAnyBenchmark {
+
+    private static final long TOKENS_PER_CHUNK = 1_000;
+
+    @Param({"4", "16"})
+    public int taskCount;
+
+    private List<Callable<Integer>> tasks;
+
+    @Setup
+    public void setUp() {
+        tasks = new ArrayList<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            int chunks = 10 * (i + 1);
+            int value = i;
+            tasks.add(() -> {
+                for (int c = 0; c < chunks; c++) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return -1;
+                    }
+                    Blackhole.consumeCPU(TOKENS_PER_CHUNK);
+                }
+                return value;
+            });
+        }
+    }
+
+    @Benchmark
+    public Integer invokeAny(ExecutorState state) throws ExecutionException, InterruptedException {
+        return state.executor.invokeAny(tasks);
+    }
+}
@@ -0,0 +1,42 @@
+package uj.wmii.pwj.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tasks per second when every task blocks for a millisecond, standing in for blocking I/O. A batch of
+ * {@value #BATCH} is submitted and waited for, so a pool of platform workers finishes at most one task per
+ * worker per millisecond, while the virtual-thread executors overlap the waits.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(IoBoundBenchmark.BATCH)
+public class IoBoundBenchmark {
+
+    static final int BATCH = 100;
+    private static final long BLOCK_MILLIS = 1;
+
+    @Benchmark
+    public void blockingBatch(ExecutorState state) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BATCH);
+        Runnable task = () -> {
+            try {
+                Thread.sleep(BLOCK_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < BATCH; i++) {
+            state.executor.execute(task);
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,70 @@
+package uj.wmii.pwj.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of one random line lookup, straight from disk, in the text format - read whole or located through
+ * its {@link LineIndex} - against the fixed-width format with its arithmetic offset and single read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class LineFormatBenchmark {
+
+    private static final int SIZE = 20;
+    private static final int LINES = 500;
+
+    @Param({"READALL", "INDEXED", "FIXED"})
+    public String source;
+
+    private Path root;
+    private LineSource lines;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        root = Files.createTempDirectory("line-format");
+        FilesCreator.Format format = source.equals("FIXED") ? FilesCreator.Format.FIXED : FilesCreator.Format.TEXT;
+        FilesCreator.generate(root, new FilesCreator.Layout(SIZE, SIZE, LINES, FilesCreator.TEMPLATE, format), 1);
+        lines = switch (source) {
+            case "READALL" -> LineSource.readAllLines(root);
+            case "INDEXED" -> {
+                LineIndex.update(root, 1);
+                yield LineSource.indexed(root);
+            }
+            case "FIXED" -> FixedWidthLineSource.open(root);
+            default -> throw new IllegalArgumentException("Unknown source " + source);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public String lookup() throws IOException {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        return lines.line(new LineQuery(r.nextInt(SIZE), r.nextInt(SIZE), r.nextInt(LINES)));
+    }
+}
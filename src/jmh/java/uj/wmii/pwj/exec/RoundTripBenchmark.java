@@ -0,0 +1,26 @@
+package uj.wmii.pwj.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of submitting an empty task and waiting for its result, with an otherwise idle
+ * executor - the cost of waking a worker and handing the result back.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RoundTripBenchmark {
+
+    private static final Callable<Boolean> EMPTY = () -> Boolean.TRUE;
+
+    @Benchmark
+    public Boolean submitAndGet(ExecutorState state) throws ExecutionException, InterruptedException {
+        return state.executor.submit(EMPTY).get();
+    }
+}
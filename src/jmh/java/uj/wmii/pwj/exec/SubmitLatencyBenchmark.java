@@ -0,0 +1,49 @@
+package uj.wmii.pwj.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of a single {@code execute} call while 8 or 64 producers submit at once - the
+ * producer side of the task queue under contention, e.g. {@link ExecutorKind#MY_LOCK_FREE} against
+ * {@link ExecutorKind#MY_SINGLE}. Each producer keeps at most {@value #WINDOW} of its tasks in flight so
+ * the queue stays bounded; a call that first waits for a free slot shows up in the tail.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SubmitLatencyBenchmark {
+
+    static final int WINDOW = 1_024;
+
+    @State(Scope.Thread)
+    public static class Producer {
+        final Semaphore slots = new Semaphore(WINDOW);
+        final Runnable task = slots::release;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void producers08(ExecutorState state, Producer producer) throws InterruptedException {
+        submit(state.executor, producer);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void producers64(ExecutorState state, Producer producer) throws InterruptedException {
+        submit(state.executor, producer);
+    }
+
+    private static void submit(ExecutorService executor, Producer producer) throws InterruptedException {
+        producer.slots.acquire();
+        executor.execute(producer.task);
+    }
+}
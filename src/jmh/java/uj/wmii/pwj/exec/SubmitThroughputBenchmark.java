@@ -0,0 +1,63 @@
+package uj.wmii.pwj.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Empty tasks per second with 1 to 64 producer threads. Each producer submits a batch and waits for it
+ * to drain, so the queue cannot grow without bound and the score covers hand-off as well as execution.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(SubmitThroughputBenchmark.BATCH)
+public class SubmitThroughputBenchmark {
+
+    static final int BATCH = 1_000;
+
+    @Benchmark
+    @Threads(1)
+    public void producers01(ExecutorState state) throws InterruptedException {
+        submitBatch(state.executor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void producers04(ExecutorState state) throws InterruptedException {
+        submitBatch(state.executor);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void producers08(ExecutorState state) throws InterruptedException {
+        submitBatch(state.executor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void producers16(ExecutorState state) throws InterruptedException {
+        submitBatch(state.executor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void producers64(ExecutorState state) throws InterruptedException {
+        submitBatch(state.executor);
+    }
+
+    private static void submitBatch(ExecutorService executor) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BATCH);
+        Runnable task = done::countDown;
+        for (int i = 0; i < BATCH; i++) {
+            executor.execute(task);
+        }
+        done.await();
+    }
+}
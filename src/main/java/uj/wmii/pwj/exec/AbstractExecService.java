@@ -0,0 +1,271 @@
+package uj.wmii.pwj.exec;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Task submission and bulk invocation shared by the executors in this package.
+ * Subclasses own the threads and decide where a task waits until it runs.
+ */
+abstract class AbstractExecService implements ExecutorService {
+
+    /**
+     * Hands a task over to the workers.
+     *
+     * @throws RejectedExecutionException if the task cannot be accepted
+     */
+    abstract void enqueue(Runnable task);
+
+    /**
+     * Hands a batch of tasks over to the workers, by default one at a time. Tasks enqueued before a
+     * rejection stay enqueued; the caller decides what happens to them.
+     *
+     * @throws RejectedExecutionException if a task cannot be accepted
+     */
+    void enqueueAll(List<? extends Runnable> tasks) {
+        for (Runnable task : tasks) {
+            enqueue(task);
+        }
+    }
+
+    /**
+     * Whether a submission from the current thread must be rejected.
+     */
+    boolean rejectsNewTasks() {
+        return isShutdown();
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        if (task == null) {
+            throw new NullPointerException("Task cannot be null");
+        }
+
+        if (rejectsNewTasks()) {
+            throw new RejectedExecutionException("ExecutorService is shut down");
+        }
+
+        ExecTask<T> futureTask = new ExecTask<>(task);
+        enqueue(futureTask);
+        return futureTask;
+
+    }
+
+    @Override
+    public <T> Future<T> submit(Runnable task, T result) {
+        if (task == null) {
+            throw new NullPointerException("Task cannot be null");
+        }
+
+        if (rejectsNewTasks()) {
+            throw new RejectedExecutionException("ExecutorService is shut down");
+        }
+
+        ExecTask<T> futureTask = new ExecTask<>(task, result);
+        enqueue(futureTask);
+        return futureTask;
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("Task cannot be null");
+        }
+
+        if (rejectsNewTasks()) {
+            throw new RejectedExecutionException("ExecutorService is shut down");
+        }
+
+        ExecTask<?> futureTask = new ExecTask<>(task, null);
+        enqueue(futureTask);
+
+        return futureTask;
+    }
+
+    /**
+     * Submits all tasks as one batch: a single shutdown check and, where the executor supports it, a
+     * single queue operation. If any task is rejected, the whole batch is cancelled.
+     *
+     * @return futures in the iteration order of {@code tasks}
+     */
+    public <T> List<Future<T>> submitAll(Collection<? extends Callable<T>> tasks) {
+        return submitAll(tasks, ExecTask.NO_DEADLINE);
+    }
+
+    /**
+     * {@link #submitAll(Collection)} with every task expiring at the given {@link System#nanoTime()}.
+     */
+    private <T> List<Future<T>> submitAll(Collection<? extends Callable<T>> tasks, long expiresAtNanos) {
+        if (tasks == null) {
+            throw new NullPointerException("Tasks collection cannot be null");
+        }
+
+        List<ExecTask<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            if (task == null) {
+                throw new NullPointerException("Task cannot be null");
+            }
+            ExecTask<T> future = new ExecTask<>(task);
+            future.expiresAtNanos = expiresAtNanos;
+            futures.add(future);
+        }
+
+        if (rejectsNewTasks()) {
+            throw new RejectedExecutionException("ExecutorService is shut down");
+        }
+
+        try {
+            enqueueAll(futures);
+        } catch (RejectedExecutionException e) {
+            cancelRemaining(futures);
+            throw e;
+        }
+        return new ArrayList<>(futures);
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+        List<Future<T>> futures = submitAll(tasks);
+
+        try {
+            for (Future<T> future : futures) {
+                if (!future.isDone()) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException | CancellationException e) {
+                        // Reported to the caller through the returned future.
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelRemaining(futures);
+            throw e;
+        }
+
+        return futures;
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
+        if (tasks == null) {
+            throw new NullPointerException("Tasks collection cannot be null");
+        }
+
+        // Capped so that deadline arithmetic cannot overflow.
+        long deadline = System.nanoTime() + Math.min(unit.toNanos(timeout), Long.MAX_VALUE >> 2);
+
+        // Tasks still queued at the deadline are of no use to the caller any more: they carry it along,
+        // so an executor that honours deadlines drops them instead of running them.
+        List<Future<T>> futures = submitAll(tasks, deadline);
+        try {
+            for (Future<T> future : futures) {
+                if (!future.isDone()) {
+                    try {
+                        future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    } catch (ExecutionException | CancellationException e) {
+                        // Reported to the caller through the returned future.
+                    } catch (TimeoutException e) {
+                        // Give up at the first timeout: everything unfinished is cancelled at once,
+                        // running tasks are interrupted so they stop occupying workers.
+                        cancelRemaining(futures);
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelRemaining(futures);
+            throw e;
+        }
+
+        return futures;
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        try {
+            return doInvokeAny(tasks, false, 0);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Untimed invokeAny timed out", e);
+        }
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return doInvokeAny(tasks, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Every task reports to a shared completion queue when it finishes, so the caller sleeps in
+     * {@code take}/{@code poll} until the first result arrives instead of polling the futures.
+     */
+    private <T> T doInvokeAny(Collection<? extends Callable<T>> tasks, boolean timed, long timeoutNanos) throws InterruptedException, ExecutionException, TimeoutException {
+        if (tasks == null) {
+            throw new NullPointerException("Tasks collection cannot be null");
+        }
+        if (tasks.isEmpty()) {
+            throw new IllegalArgumentException("Tasks collection cannot be empty");
+        }
+
+        // Capped so that deadline arithmetic cannot overflow.
+        long deadline = System.nanoTime() + Math.min(timeoutNanos, Long.MAX_VALUE >> 2);
+        BlockingQueue<Future<T>> completed = new LinkedBlockingQueue<>();
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+
+        try {
+            for (Callable<T> task : tasks) {
+                if (task == null) {
+                    throw new NullPointerException("Task cannot be null");
+                }
+                ExecTask<T> future = new ExecTask<>(task) {
+                    @Override
+                    protected void done() {
+                        completed.add(this);
+                    }
+                };
+                futures.add(future);
+                execute(future);
+            }
+
+            ExecutionException lastException = null;
+            for (int pending = futures.size(); pending > 0; pending--) {
+                Future<T> future = timed
+                        ? completed.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                        : completed.take();
+                if (future == null) {
+                    throw new TimeoutException();
+                }
+                try {
+                    return future.get();
+                } catch (ExecutionException e) {
+                    lastException = e;
+                } catch (CancellationException e) {
+                    lastException = new ExecutionException(e);
+                }
+            }
+            throw lastException;
+        } finally {
+            cancelRemaining(futures);
+        }
+    }
+
+    private static void cancelRemaining(List<? extends Future<?>> futures) {
+        for (Future<?> f : futures) {
+            f.cancel(true);
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException("Command cannot be null");
+        }
+
+        if (rejectsNewTasks()) {
+            throw new RejectedExecutionException("ExecutorService is shut down");
+        }
+
+        enqueue(command);
+    }
+}
@@ -0,0 +1,324 @@
+package uj.wmii.pwj.exec;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Skeleton of the task queues of {@link MyExecService}: capacity, element count and the lock and
+ * condition hand-shake, around storage that a subclass provides.
+ * <p>
+ * Producers hold {@code putLock} and consumers {@code takeLock}; storage that cannot take an insert and a
+ * removal at the same time uses one lock for both. Producers signal {@code notEmpty} only when the queue
+ * was empty, and a consumer that leaves elements behind wakes the next one, so a large batch costs a single
+ * wake-up on the submitting thread. {@code notFull} is handed on the same way in the other direction.
+ */
+abstract class AbstractTaskQueue<E> extends AbstractQueue<E> implements BatchQueue<E> {
+
+    private final int capacity;
+    private final AtomicInteger count = new AtomicInteger();
+    private final ReentrantLock takeLock = new ReentrantLock();
+    private final Condition notEmpty = takeLock.newCondition();
+    private final ReentrantLock putLock;
+    private final Condition notFull;
+
+    /**
+     * @param separateLocks whether the storage allows one insert and one removal at the same time
+     */
+    AbstractTaskQueue(int capacity, boolean separateLocks) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.putLock = separateLocks ? new ReentrantLock() : takeLock;
+        this.notFull = putLock.newCondition();
+    }
+
+    /**
+     * Stores one element; called under {@code putLock} when there is room for it.
+     */
+    abstract void insert(E e);
+
+    /**
+     * Stores the first {@code n} elements; called under {@code putLock} when there is room for them.
+     */
+    void insertAll(List<? extends E> elements, int n) {
+        for (int i = 0; i < n; i++) {
+            insert(elements.get(i));
+        }
+    }
+
+    /**
+     * Removes the next element; called under {@code takeLock}, never while the queue is empty.
+     */
+    abstract E extract();
+
+    /**
+     * The next element without removing it, or {@code null}; called under {@code takeLock}.
+     */
+    abstract E first();
+
+    /**
+     * The stored elements in the order they would leave; called under both locks.
+     */
+    abstract List<E> snapshot();
+
+    private void signalNotEmpty() {
+        takeLock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    private void signalNotFull() {
+        putLock.lock();
+        try {
+            notFull.signal();
+        } finally {
+            putLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        if (count.get() >= capacity) {
+            return false;
+        }
+        int before;
+        putLock.lock();
+        try {
+            if (count.get() >= capacity) {
+                return false;
+            }
+            insert(e);
+            before = count.getAndIncrement();
+            if (before + 1 < capacity) {
+                notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (before == 0) {
+            signalNotEmpty();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long nanos = unit.toNanos(timeout);
+        int before;
+        putLock.lockInterruptibly();
+        try {
+            while (count.get() >= capacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            insert(e);
+            before = count.getAndIncrement();
+            if (before + 1 < capacity) {
+                notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (before == 0) {
+            signalNotEmpty();
+        }
+        return true;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        offer(e, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int offerAll(List<? extends E> elements) {
+        int n = elements.size();
+        if (n == 0) {
+            return 0;
+        }
+        for (E e : elements) {
+            if (e == null) {
+                throw new NullPointerException();
+            }
+        }
+        int added;
+        int before;
+        putLock.lock();
+        try {
+            added = Math.min(n, capacity - count.get());
+            if (added <= 0) {
+                return 0;
+            }
+            insertAll(elements, added);
+            before = count.getAndAdd(added);
+            if (before + added < capacity) {
+                notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (before == 0) {
+            signalNotEmpty();
+        }
+        return added;
+    }
+
+    @Override
+    public E poll() {
+        if (count.get() == 0) {
+            return null;
+        }
+        E item;
+        int before;
+        takeLock.lock();
+        try {
+            if (count.get() == 0) {
+                return null;
+            }
+            item = extract();
+            before = count.getAndDecrement();
+            if (before > 1) {
+                // Pass the wake-up on: a batch signals only the first consumer.
+                notEmpty.signal();
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        if (before == capacity) {
+            signalNotFull();
+        }
+        return item;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        E item;
+        int before;
+        takeLock.lockInterruptibly();
+        try {
+            while (count.get() == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            item = extract();
+            before = count.getAndDecrement();
+            if (before > 1) {
+                notEmpty.signal();
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        if (before == capacity) {
+            signalNotFull();
+        }
+        return item;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E item;
+        int before;
+        takeLock.lockInterruptibly();
+        try {
+            while (count.get() == 0) {
+                notEmpty.await();
+            }
+            item = extract();
+            before = count.getAndDecrement();
+            if (before > 1) {
+                notEmpty.signal();
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        if (before == capacity) {
+            signalNotFull();
+        }
+        return item;
+    }
+
+    @Override
+    public E peek() {
+        if (count.get() == 0) {
+            return null;
+        }
+        takeLock.lock();
+        try {
+            return first();
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - count.get();
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        int n;
+        int before;
+        takeLock.lock();
+        try {
+            n = Math.min(maxElements, count.get());
+            for (int i = 0; i < n; i++) {
+                c.add(extract());
+            }
+            before = n > 0 ? count.getAndAdd(-n) : 0;
+        } finally {
+            takeLock.unlock();
+        }
+        if (n > 0 && before == capacity) {
+            signalNotFull();
+        }
+        return n;
+    }
+
+    /**
+     * Snapshot of the queued elements, in the order they would leave.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        putLock.lock();
+        takeLock.lock();
+        try {
+            return Collections.unmodifiableList(snapshot()).iterator();
+        } finally {
+            takeLock.unlock();
+            putLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package uj.wmii.pwj.exec;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Blocking queue that can publish many elements in one operation, used by {@link MyExecService} for
+ * {@code submitAll} and {@code invokeAll}.
+ */
+interface BatchQueue<E> extends BlockingQueue<E> {
+
+    /**
+     * Inserts as many leading elements as fit, all at once, and wakes at most one waiting consumer;
+     * consumers pass the wake-up on while elements remain.
+     *
+     * @return the number of elements inserted, counted from the start of the list
+     */
+    int offerAll(List<? extends E> elements);
+}
@@ -0,0 +1,17 @@
+package uj.wmii.pwj.exec;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link IdleStrategy#blocking()}. {@link MyExecService} recognises it and waits in the task queue's own
+ * blocking poll instead; {@link #idle(int)} only matters to other callers.
+ */
+enum BlockingIdleStrategy implements IdleStrategy {
+    INSTANCE;
+
+    @Override
+    public void idle(int idleCount) {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
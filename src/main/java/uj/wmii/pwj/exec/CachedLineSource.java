@@ -0,0 +1,222 @@
+package uj.wmii.pwj.exec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link LineSource} that keeps the contents of hot files in memory: the raw bytes plus the offset of every
+ * line, so a hit decodes just the requested line without touching the disk.
+ * <p>
+ * The cache is bounded by bytes, not by entries, and split into stripes with a lock and a budget each.
+ * Every stripe is a segmented LRU: a file enters the probation segment on its first load and moves to the
+ * protected segment, at most 80% of the stripe, when it is hit again. Eviction takes the least recently used
+ * file of probation first, so a burst of files read only once cannot push out the ones read over and over.
+ * <p>
+ * Concurrent misses on one file are coalesced: the first thread loads it, the others wait for that load.
+ */
+public final class CachedLineSource implements LineSource {
+
+    /**
+     * Rough per-entry cost of the map nodes and array headers, charged on top of the contents.
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final Path root;
+    private final Stripe[] stripes = new Stripe[FileStripes.COUNT];
+    private final ConcurrentHashMap<Long, CompletableFuture<Content>> loading = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes memory the cached contents may take in total, overhead included
+     */
+    public CachedLineSource(Path root, long maxBytes) {
+        if (root == null) {
+            throw new NullPointerException("Root cannot be null");
+        }
+        if (maxBytes < FileStripes.COUNT) {
+            throw new IllegalArgumentException("Cache must hold at least " + FileStripes.COUNT + " bytes");
+        }
+        this.root = root;
+        for (int i = 0; i < FileStripes.COUNT; i++) {
+            stripes[i] = new Stripe(maxBytes / FileStripes.COUNT);
+        }
+    }
+
+    @Override
+    public String line(LineQuery query) throws IOException {
+        long key = query.fileKey();
+        Stripe stripe = stripes[FileStripes.of(key)];
+        Content content;
+        synchronized (stripe) {
+            content = stripe.get(key);
+        }
+        if (content != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            content = load(query, key, stripe);
+        }
+        return LineIndex.decodeLine(ByteBuffer.wrap(content.bytes()), content.starts(), query.line());
+    }
+
+    private Content load(LineQuery query, long key, Stripe stripe) throws IOException {
+        CompletableFuture<Content> mine = new CompletableFuture<>();
+        CompletableFuture<Content> pending = loading.putIfAbsent(key, mine);
+        if (pending != null) {
+            try {
+                return pending.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException io) {
+                    throw io.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            // A load that finished between our lookup and our claim has already filled the stripe.
+            Content content;
+            synchronized (stripe) {
+                content = stripe.get(key);
+            }
+            if (content == null) {
+                byte[] bytes = Files.readAllBytes(query.resolve(root));
+                content = new Content(bytes, LineIndex.lineStarts(ByteBuffer.wrap(bytes)));
+                loads.increment();
+                synchronized (stripe) {
+                    stripe.put(key, content);
+                }
+            }
+            mine.complete(content);
+            return content;
+        } catch (IOException e) {
+            mine.completeExceptionally(new UncheckedIOException(e));
+            throw e;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    public Stats stats() {
+        long bytes = 0;
+        int files = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                bytes += stripe.probationBytes + stripe.protectedBytes;
+                files += stripe.probation.size() + stripe.protectedSegment.size();
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), loads.sum(), evictions.sum(), files, bytes);
+    }
+
+    /**
+     * Point-in-time view of the cache. The counters are read one after another, not atomically together.
+     *
+     * @param misses lookups that did not find their file cached, including ones that waited for another
+     *               thread's load of it
+     * @param loads  files actually read from disk
+     * @param bytes  weight of the cached files, overhead included
+     */
+    public record Stats(long hits, long misses, long loads, long evictions, int files, long bytes) {
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Cache: hit rate %.1f%%, %d hits, %d misses, %d loads, %d evictions, %d files in %d kB",
+                    hitRate() * 100, hits, misses, loads, evictions, files, bytes / 1024);
+        }
+    }
+
+    private record Content(byte[] bytes, int[] starts) {
+
+        long weight() {
+            return bytes.length + 4L * starts.length + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+
+    /**
+     * One segmented LRU; guarded by its own monitor.
+     */
+    private final class Stripe {
+        private final long capacity;
+        private final long protectedCapacity;
+        // Both in insertion order, eldest first; a hit re-inserts to refresh the position.
+        private final LinkedHashMap<Long, Content> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<Long, Content> protectedSegment = new LinkedHashMap<>();
+        private long probationBytes;
+        private long protectedBytes;
+
+        Stripe(long capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = capacity * 4 / 5;
+        }
+
+        Content get(long key) {
+            Content content = protectedSegment.remove(key);
+            if (content != null) {
+                protectedSegment.put(key, content);
+                return content;
+            }
+            content = probation.remove(key);
+            if (content == null) {
+                return null;
+            }
+            probationBytes -= content.weight();
+            protectedSegment.put(key, content);
+            protectedBytes += content.weight();
+            // Overflow of the protected segment gets a second chance at the young end of probation.
+            Iterator<Map.Entry<Long, Content>> eldest = protectedSegment.entrySet().iterator();
+            while (protectedBytes > protectedCapacity && eldest.hasNext()) {
+                Map.Entry<Long, Content> demoted = eldest.next();
+                if (demoted.getKey() == key) {
+                    break;
+                }
+                eldest.remove();
+                protectedBytes -= demoted.getValue().weight();
+                probation.put(demoted.getKey(), demoted.getValue());
+                probationBytes += demoted.getValue().weight();
+            }
+            return content;
+        }
+
+        void put(long key, Content content) {
+            long weight = content.weight();
+            if (weight > capacity || probation.containsKey(key) || protectedSegment.containsKey(key)) {
+                return;
+            }
+            probation.put(key, content);
+            probationBytes += weight;
+            while (probationBytes + protectedBytes > capacity) {
+                LinkedHashMap<Long, Content> victims = probation.isEmpty() ? protectedSegment : probation;
+                Iterator<Map.Entry<Long, Content>> eldest = victims.entrySet().iterator();
+                Map.Entry<Long, Content> victim = eldest.next();
+                eldest.remove();
+                if (victims == probation) {
+                    probationBytes -= victim.getValue().weight();
+                } else {
+                    protectedBytes -= victim.getValue().weight();
+                }
+                evictions.increment();
+            }
+        }
+    }
+}
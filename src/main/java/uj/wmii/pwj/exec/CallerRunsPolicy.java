@@ -0,0 +1,16 @@
+package uj.wmii.pwj.exec;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * {@link SaturationPolicy#callerRuns()}. {@link MyExecService} recognises it on its timer thread, which
+ * must not run tasks itself, and retries a due task that does not fit on the next tick instead.
+ */
+enum CallerRunsPolicy implements SaturationPolicy {
+    INSTANCE;
+
+    @Override
+    public void saturated(Runnable task, BlockingQueue<Runnable> queue) {
+        task.run();
+    }
+}
@@ -0,0 +1,11 @@
+package uj.wmii.pwj.exec;
+
+/**
+ * Callback of {@link RingBufferExecService#execute(java.util.concurrent.Callable, Completion)}, invoked on
+ * the worker right after the task ran. Exactly one of {@code result} and {@code failure} is meaningful.
+ */
+@FunctionalInterface
+public interface Completion<T> {
+
+    void complete(T result, Throwable failure);
+}
@@ -0,0 +1,80 @@
+package uj.wmii.pwj.exec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Task queue served earliest deadline first. A task without a deadline is ordered as if it were due a
+ * fixed slack after it was queued, so under sustained deadline traffic it ages towards the head instead
+ * of starving. Tasks with equal deadlines leave in arrival order.
+ */
+class DeadlineQueue extends AbstractTaskQueue<Runnable> {
+
+    /**
+     * @param dueNanos deadline relative to the queue's origin, so that plain {@code long} comparison holds
+     */
+    private record Entry(Runnable task, long dueNanos, long sequence) implements Comparable<Entry> {
+        @Override
+        public int compareTo(Entry other) {
+            int byDeadline = Long.compare(dueNanos, other.dueNanos);
+            return byDeadline != 0 ? byDeadline : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<Entry> heap = new PriorityQueue<>();
+    private final long slackNanos;
+    private final long origin = System.nanoTime();
+    private long nextSequence;
+
+    DeadlineQueue(long slackNanos, int capacity) {
+        super(capacity, false);
+        this.slackNanos = slackNanos;
+    }
+
+    @Override
+    void insert(Runnable task) {
+        insert(task, System.nanoTime());
+    }
+
+    @Override
+    void insertAll(List<? extends Runnable> tasks, int n) {
+        long now = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            insert(tasks.get(i), now);
+        }
+    }
+
+    private void insert(Runnable task, long nowNanos) {
+        long due = task instanceof ExecTask<?> execTask && execTask.hasDeadline()
+                ? execTask.expiresAtNanos
+                : nowNanos + slackNanos;
+        heap.add(new Entry(task, due - origin, nextSequence++));
+    }
+
+    @Override
+    Runnable extract() {
+        return heap.poll().task();
+    }
+
+    @Override
+    Runnable first() {
+        Entry head = heap.peek();
+        return head == null ? null : head.task();
+    }
+
+    /**
+     * Earliest deadline first.
+     */
+    @Override
+    List<Runnable> snapshot() {
+        List<Entry> entries = new ArrayList<>(heap);
+        Collections.sort(entries);
+        List<Runnable> tasks = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            tasks.add(entry.task());
+        }
+        return tasks;
+    }
+}
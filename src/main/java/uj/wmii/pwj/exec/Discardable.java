@@ -0,0 +1,27 @@
+package uj.wmii.pwj.exec;
+
+import java.util.concurrent.Future;
+
+/**
+ * Implemented by queued entries that stand for other tasks, such as a keyed mailbox, so that a
+ * {@link SaturationPolicy} evicting one lets its owner settle the tasks instead of losing them silently.
+ */
+interface Discardable {
+
+    /**
+     * Called instead of {@code run()} once the entry has been taken out of its queue for good.
+     */
+    void discard();
+
+    /**
+     * Drops a task evicted from a queue: a {@link Discardable} is told, a {@link Future} is cancelled so
+     * nobody waits on it forever, and any other command is simply not run.
+     */
+    static void drop(Runnable task) {
+        if (task instanceof Discardable discardable) {
+            discardable.discard();
+        } else if (task instanceof Future<?> future) {
+            future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package uj.wmii.pwj.exec;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link CompletableFuture} whose {@code *Async} stages without an explicit executor run on the executor
+ * that created it instead of the common pool. Dependent stages inherit that executor.
+ */
+class ExecCompletableFuture<T> extends CompletableFuture<T> {
+
+    private final Executor executor;
+
+    ExecCompletableFuture(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public Executor defaultExecutor() {
+        return executor;
+    }
+
+    @Override
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        return new ExecCompletableFuture<>(executor);
+    }
+}
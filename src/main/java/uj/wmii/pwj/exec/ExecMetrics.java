@@ -0,0 +1,46 @@
+package uj.wmii.pwj.exec;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of one {@link MyExecService}. Every update is a striped
+ * {@link LongAdder} increment or a single atomic histogram increment, so workers never contend on it.
+ */
+public final class ExecMetrics {
+
+    final LongAdder submitted = new LongAdder();
+    final LongAdder completed = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    final LongAdder expired = new LongAdder();
+    final LatencyHistogram queueWait = new LatencyHistogram();
+    final LatencyHistogram runTime = new LatencyHistogram();
+
+    ExecMetrics() {
+    }
+
+    Snapshot snapshot(int queueDepth) {
+        return new Snapshot(submitted.sum(), completed.sum(), failed.sum(), rejected.sum(), expired.sum(),
+                queueDepth, queueWait.snapshot(), runTime.snapshot());
+    }
+
+    void resetHistograms() {
+        queueWait.reset();
+        runTime.reset();
+    }
+
+    /**
+     * Point-in-time view of the metrics. The counters are read one after another, not atomically together.
+     *
+     * @param submitted tasks accepted into the queue
+     * @param completed tasks that ran to the end, including cancelled ones
+     * @param failed    tasks that ended with an exception
+     * @param rejected  tasks the {@link SaturationPolicy} refused
+     * @param expired   tasks cancelled instead of started because their deadline had passed in the queue
+     * @param queueWait time between entering the queue and starting on a worker, in nanoseconds
+     * @param runTime   time spent running on a worker, in nanoseconds
+     */
+    public record Snapshot(long submitted, long completed, long failed, long rejected, long expired,
+                           int queueDepth, LatencyHistogram.Snapshot queueWait, LatencyHistogram.Snapshot runTime) {
+    }
+}
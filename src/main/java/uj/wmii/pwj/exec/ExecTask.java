@@ -0,0 +1,60 @@
+package uj.wmii.pwj.exec;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Future created for every submitted task. Besides the result it carries the time it entered the
+ * task queue, which {@link MyExecService} uses for its queue-wait metrics, optionally the time
+ * after which nobody waits for the result any more, and its {@link TaskPriority} - given explicitly, or
+ * taken over from a wrapped task that is {@link Prioritized} itself.
+ */
+class ExecTask<V> extends FutureTask<V> implements Prioritized {
+
+    /**
+     * {@link #expiresAtNanos} of a task that stays useful however long it waits.
+     */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    long enqueuedNanos;
+    /**
+     * {@link System#nanoTime()} after which {@link MyExecService} cancels the task instead of starting it.
+     */
+    long expiresAtNanos = NO_DEADLINE;
+    private final TaskPriority priority;
+
+    ExecTask(Callable<V> callable) {
+        this(callable, priorityOf(callable));
+    }
+
+    ExecTask(Runnable runnable, V result) {
+        this(runnable, result, priorityOf(runnable));
+    }
+
+    ExecTask(Callable<V> callable, TaskPriority priority) {
+        super(callable);
+        this.priority = priority;
+    }
+
+    ExecTask(Runnable runnable, V result, TaskPriority priority) {
+        super(runnable, result);
+        this.priority = priority;
+    }
+
+    private static TaskPriority priorityOf(Object task) {
+        return task instanceof Prioritized prioritized ? prioritized.priority() : TaskPriority.NORMAL;
+    }
+
+    @Override
+    public TaskPriority priority() {
+        return priority;
+    }
+
+    boolean hasDeadline() {
+        return expiresAtNanos != NO_DEADLINE;
+    }
+
+    boolean isExpired(long nowNanos) {
+        return hasDeadline() && nowNanos - expiresAtNanos >= 0;
+    }
+}
@@ -0,0 +1,21 @@
+package uj.wmii.pwj.exec;
+
+/**
+ * How the file caches of the line sources split their entries into independently locked stripes.
+ */
+final class FileStripes {
+
+    static final int BITS = 4;
+    static final int COUNT = 1 << BITS;
+
+    private FileStripes() {
+    }
+
+    /**
+     * Stripe of a {@link LineQuery#fileKey() file key}. Fibonacci hashing spreads neighbouring keys, which
+     * differ in their low bits only, over all stripes.
+     */
+    static int of(long fileKey) {
+        return (int) ((fileKey * 0x9E3779B97F4A7C15L) >>> (64 - BITS));
+    }
+}
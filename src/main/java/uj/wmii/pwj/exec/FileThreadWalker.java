@@ -1,50 +1,127 @@
 package uj.wmii.pwj.exec;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Locale;
 import java.util.Random;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
+/**
+ * Random line lookups over the files written by {@link FilesCreator}, run by a {@link LineLookupEngine}.
+ * <p>
+ * Usage: {@code FileThreadWalker [--mode thread|pool|virtual|all] [--source readall|indexed|mapped|cached|fixed]
+ * [--mappings N] [--cache-mb N] [--batch N] [--window-ms N] [--lookups N] [--concurrency N] [--threads N]
+ * [--dirs N] [--files N] [--lines N] [--data DIR] [--seed N]}.
+ * <p>
+ * Queries pick a random line of a random file; {@code --dirs}, {@code --files} and {@code --lines} must
+ * match the layout the data tree was written with, {@link FilesCreator}'s defaults unless given.
+ * With {@code --mode all} every mode runs the same queries in turn, so their reports compare directly;
+ * each mode gets a freshly opened source, so no mode inherits the mappings or cache another one warmed up.
+ * The {@code indexed} source first brings the {@link LineIndex} of the data tree up to date. The
+ * {@code mapped} source keeps up to {@code --mappings} files memory-mapped, the {@code cached} one up to
+ * {@code --cache-mb} megabytes of hot files in memory, and reports its hit rate after each run. The
+ * {@code fixed} source needs a tree written with {@code FilesCreator --format fixed}.
+ * {@code --batch} above 1 groups up to that many queries of one file, held back for at most
+ * {@code --window-ms}, into one task.
+ */
 public class FileThreadWalker {
-    static final int SIZE = 500;
     static final int REPEATS = 10_000_000;
 
-    public static void main(String[] args) throws InterruptedException {
-        long tt0 = System.currentTimeMillis();
-        Random r = new Random();
-        CountDownLatch latch = new CountDownLatch(REPEATS);
-        for (int i = 0; i < REPEATS; i++) {
-            int dirIdx = r.nextInt(SIZE);
-            int fileIdx = r.nextInt(SIZE);
-            int lineIdx = r.nextInt(SIZE);
-            Path p = Path.of("data/" + dirIdx + "/" + fileIdx + ".txt");
-            MyRunnable runnable = new MyRunnable(p, lineIdx, latch);
-            Thread.ofPlatform().name("T-" + i).start(runnable);
+    /**
+     * How lookups read their line.
+     */
+    enum Source {
+        READALL,
+        INDEXED,
+        MAPPED,
+        CACHED,
+        FIXED;
+
+        LineSource open(Options options) throws IOException, InterruptedException {
+            return switch (this) {
+                case READALL -> LineSource.readAllLines(options.data());
+                case INDEXED -> {
+                    System.out.println(LineIndex.update(options.data(), options.threads()));
+                    yield LineSource.indexed(options.data());
+                }
+                case MAPPED -> new MappedLineSource(options.data(), options.mappings());
+                case CACHED -> new CachedLineSource(options.data(), options.cacheMegabytes() << 20);
+                case FIXED -> FixedWidthLineSource.open(options.data());
+            };
         }
-        latch.await();
-        long tt1 = System.currentTimeMillis();
-        System.out.println("TOTAL: " + (tt1 - tt0) + " ms");
     }
 
-}
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Options options = Options.parse(args);
+        for (LineLookupEngine.Mode mode : options.modes()) {
+            LineSource source = options.source().open(options);
+            LineLookupEngine engine = new LineLookupEngine(source, mode, options.concurrency(), options.threads(),
+                    options.batchSize(), options.batchWindowMillis(), TimeUnit.MILLISECONDS);
+            System.out.println(engine.run(randomQueries(options.seed(), options.lookups(), options.dirs(),
+                    options.files(), options.lines())));
+            if (source instanceof CachedLineSource cache) {
+                System.out.println(cache.stats());
+            }
+        }
+    }
 
-record MyRunnable(Path path, int lineIdx, CountDownLatch latch) implements Runnable {
+    static Stream<LineQuery> randomQueries(long seed, long count, int dirs, int files, int lines) {
+        Random r = new Random(seed);
+        return Stream.generate(() -> new LineQuery(r.nextInt(dirs), r.nextInt(files), r.nextInt(lines))).limit(count);
+    }
 
-    private static final Random r = new Random();
+    record Options(List<LineLookupEngine.Mode> modes, Source source, int mappings, long cacheMegabytes,
+                   int batchSize, long batchWindowMillis, long lookups, int concurrency, int threads, int dirs,
+                   int files, int lines, Path data, long seed) {
 
-    @Override
-    public void run() {
-        String line;
-        try {
-            List<String> lines = Files.readAllLines(path);
-            line = lines.get(lineIdx);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        } finally {
-            latch.countDown();
+        static Options parse(String[] args) {
+            List<LineLookupEngine.Mode> modes = List.of(LineLookupEngine.Mode.POOL);
+            Source source = Source.READALL;
+            int mappings = 16_384;
+            long cacheMegabytes = 256;
+            int batchSize = 1;
+            long batchWindowMillis = 10;
+            long lookups = REPEATS;
+            int threads = Runtime.getRuntime().availableProcessors();
+            int concurrency = 256;
+            int dirs = FilesCreator.SIZE;
+            int files = FilesCreator.SIZE;
+            int lines = FilesCreator.SIZE;
+            Path data = Path.of("data");
+            long seed = System.nanoTime();
+            for (int i = 0; i < args.length; i += 2) {
+                String option = args[i];
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+                String value = args[i + 1];
+                switch (option) {
+                    case "--mode" -> modes = value.equals("all")
+                            ? List.of(LineLookupEngine.Mode.values())
+                            : List.of(LineLookupEngine.Mode.valueOf(value.toUpperCase(Locale.ROOT)));
+                    case "--source" -> source = Source.valueOf(value.toUpperCase(Locale.ROOT));
+                    case "--mappings" -> mappings = Integer.parseInt(value);
+                    case "--cache-mb" -> cacheMegabytes = Long.parseLong(value);
+                    case "--batch" -> batchSize = Integer.parseInt(value);
+                    case "--window-ms" -> batchWindowMillis = Long.parseLong(value);
+                    case "--lookups" -> lookups = Long.parseLong(value);
+                    case "--concurrency" -> concurrency = Integer.parseInt(value);
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    case "--dirs" -> dirs = Integer.parseInt(value);
+                    case "--files" -> files = Integer.parseInt(value);
+                    case "--lines" -> lines = Integer.parseInt(value);
+                    case "--data" -> data = Path.of(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+            if (dirs <= 0 || files <= 0 || lines <= 0) {
+                throw new IllegalArgumentException("Numbers of directories, files and lines must be positive");
+            }
+            return new Options(modes, source, mappings, cacheMegabytes, batchSize, batchWindowMillis, lookups,
+                    concurrency, threads, dirs, files, lines, data, seed);
         }
-        if (r.nextInt(10000) == 12) System.out.println(Thread.currentThread().getName() + " " + line);
     }
-}
\ No newline at end of file
+}
@@ -1,34 +1,315 @@
 package uj.wmii.pwj.exec;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Writes the data set that {@link FileThreadWalker} reads: {@code <data>/<dir>/<file>.txt}, every file with
+ * the same number of lines built from a template.
+ * <p>
+ * Usage: {@code FilesCreator [--dirs N] [--files N] [--lines N] [--template T] [--format text|fixed]
+ * [--threads N] [--data DIR]}.
+ * The template may refer to {@code {dir}}, {@code {file}} and {@code {line}}; every line gets a {@code \n}.
+ * In the {@code fixed} format every line is padded with spaces to the same width, so
+ * {@link FixedWidthLineSource} finds a line by arithmetic instead of scanning for it.
+ * <p>
+ * Each directory is one task on a {@link MyExecService}. A task builds a file's contents in a buffer it
+ * reuses for all its files, and writes it with a single channel write.
+ */
 public class FilesCreator {
 
     static final int SIZE = 500;
+    static final String TEMPLATE = "{dir}:{file}:{line}:Lorem ipsum dolor sil amet...";
 
-    public static void main(String[] args) throws IOException {
-        long tt0 = System.currentTimeMillis();
-        for (int i = 0; i < SIZE; i++) {
-            long t0 = System.currentTimeMillis();
-            System.out.println("Directory " + i + " of " + SIZE);
-            Path p = Path.of("data/" + i);
-            Files.createDirectories(p);
-            for (int j = 0; j < SIZE; j++) {
-                p = Path.of("data/" + i + "/" + j + ".txt");
-                Files.createFile(p);
-                String s;
-                for (int k = 0; k < SIZE; k++) {
-                    s = i+":"+j+":"+k+":Lorem ipsum dolor sil amet...\n";
-                    Files.write(p, s.getBytes(), StandardOpenOption.APPEND);
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Options options = Options.parse(args);
+        System.out.println(generate(options.data(), options.layout(), options.threads()));
+    }
+
+    /**
+     * How lines are laid out in a file.
+     */
+    enum Format {
+        /**
+         * Lines as long as their text, each ended by {@code \n}.
+         */
+        TEXT,
+        /**
+         * Every line padded with trailing spaces to the length of the longest line the template can produce,
+         * then ended by {@code \n}. Line {@code k} starts at byte {@code k * recordWidth}.
+         */
+        FIXED
+    }
+
+    /**
+     * Scale and contents of a data set.
+     */
+    record Layout(int dirs, int files, int lines, String template, Format format) {
+
+        Layout {
+            if (dirs <= 0 || files <= 0 || lines <= 0) {
+                throw new IllegalArgumentException("Numbers of directories, files and lines must be positive");
+            }
+            if (template == null || format == null) {
+                throw new NullPointerException("Template and format cannot be null");
+            }
+        }
+
+        Layout(int dirs, int files, int lines, String template) {
+            this(dirs, files, lines, template, Format.TEXT);
+        }
+    }
+
+    /**
+     * Writes every file of the layout under {@code root}, replacing files already there.
+     */
+    static Result generate(Path root, Layout layout, int threads) throws IOException, InterruptedException {
+        LineTemplate template = LineTemplate.parse(layout.template());
+        int recordWidth = layout.format() == Format.FIXED ? template.maxLength(layout) + 1 : 0;
+        long startNanos = System.nanoTime();
+        List<Callable<Long>> tasks = new ArrayList<>(layout.dirs());
+        for (int dir = 0; dir < layout.dirs(); dir++) {
+            int d = dir;
+            tasks.add(() -> writeDirectory(root, d, layout, template, recordWidth));
+        }
+        MyExecService executor = MyExecService.builder().threads(threads).build();
+        long bytes = 0;
+        try {
+            for (Future<Long> written : executor.submitAll(tasks)) {
+                bytes += written.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Generation failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Result((long) layout.dirs() * layout.files(), bytes, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @param recordWidth bytes every line takes, its {@code \n} included; 0 leaves lines unpadded
+     * @return bytes written
+     */
+    private static long writeDirectory(Path root, int dir, Layout layout, LineTemplate template, int recordWidth)
+            throws IOException {
+        Path directory = root.resolve(Integer.toString(dir));
+        Files.createDirectories(directory);
+        ByteBuilder contents = new ByteBuilder();
+        long bytes = 0;
+        for (int file = 0; file < layout.files(); file++) {
+            contents.clear();
+            for (int line = 0; line < layout.lines(); line++) {
+                template.append(contents, dir, file, line, recordWidth);
+            }
+            try (FileChannel channel = FileChannel.open(directory.resolve(file + ".txt"), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer out = ByteBuffer.wrap(contents.bytes, 0, contents.size);
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+            bytes += contents.size;
+        }
+        return bytes;
+    }
+
+    /**
+     * Outcome of one {@link #generate}.
+     */
+    record Result(long files, long bytes, long elapsedNanos) {
+
+        double megabytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos / (1 << 20);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("TOTAL: %d files, %.1f MB in %d ms, %.1f MB/s", files, bytes / (double) (1 << 20),
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), megabytesPerSecond());
+        }
+    }
+
+    /**
+     * A line template parsed once: literal bytes, already UTF-8 encoded, between the numeric fields.
+     */
+    static final class LineTemplate {
+        private static final String[] FIELDS = {"{dir}", "{file}", "{line}"};
+
+        // literals[i] precedes fields[i]; the last literal ends the line, without its \n.
+        private final byte[][] literals;
+        private final int[] fields;
+
+        private LineTemplate(byte[][] literals, int[] fields) {
+            this.literals = literals;
+            this.fields = fields;
+        }
+
+        static LineTemplate parse(String template) {
+            if (template.indexOf('\n') >= 0) {
+                throw new IllegalArgumentException("Template must fit on one line");
+            }
+            List<byte[]> literals = new ArrayList<>();
+            List<Integer> fields = new ArrayList<>();
+            int from = 0;
+            while (true) {
+                int next = -1;
+                int field = -1;
+                for (int f = 0; f < FIELDS.length; f++) {
+                    int at = template.indexOf(FIELDS[f], from);
+                    if (at >= 0 && (next < 0 || at < next)) {
+                        next = at;
+                        field = f;
+                    }
+                }
+                if (next < 0) {
+                    literals.add(template.substring(from).getBytes(StandardCharsets.UTF_8));
+                    break;
+                }
+                literals.add(template.substring(from, next).getBytes(StandardCharsets.UTF_8));
+                fields.add(field);
+                from = next + FIELDS[field].length();
+            }
+            return new LineTemplate(literals.toArray(new byte[0][]),
+                    fields.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        /**
+         * Length in bytes, without the {@code \n}, of the longest line the template produces in the layout.
+         */
+        int maxLength(Layout layout) {
+            int length = 0;
+            for (byte[] literal : literals) {
+                length += literal.length;
+            }
+            for (int field : fields) {
+                int max = switch (field) {
+                    case 0 -> layout.dirs();
+                    case 1 -> layout.files();
+                    default -> layout.lines();
+                } - 1;
+                length += Integer.toString(max).length();
+            }
+            return length;
+        }
+
+        /**
+         * @param recordWidth bytes the line takes, padding and {@code \n} included; 0 for no padding
+         */
+        void append(ByteBuilder out, int dir, int file, int line, int recordWidth) {
+            int start = out.size;
+            for (int i = 0; i < fields.length; i++) {
+                out.append(literals[i]);
+                out.appendInt(switch (fields[i]) {
+                    case 0 -> dir;
+                    case 1 -> file;
+                    default -> line;
+                });
+            }
+            out.append(literals[fields.length]);
+            if (recordWidth > 0) {
+                out.pad(start + recordWidth - 1, (byte) ' ');
+            }
+            out.append((byte) '\n');
+        }
+    }
+
+    /**
+     * Growable byte array that formats non-negative ints without going through strings.
+     */
+    static final class ByteBuilder {
+        byte[] bytes = new byte[64 * 1024];
+        int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void append(byte[] data) {
+            ensureCapacity(data.length);
+            System.arraycopy(data, 0, bytes, size, data.length);
+            size += data.length;
+        }
+
+        void append(byte b) {
+            ensureCapacity(1);
+            bytes[size++] = b;
+        }
+
+        /**
+         * Appends {@code b} until the size reaches {@code length}.
+         */
+        void pad(int length, byte b) {
+            if (length > size) {
+                ensureCapacity(length - size);
+                Arrays.fill(bytes, size, length, b);
+                size = length;
+            }
+        }
+
+        void appendInt(int value) {
+            int digits = 1;
+            for (int v = value; v >= 10; v /= 10) {
+                digits++;
+            }
+            ensureCapacity(digits);
+            for (int i = size + digits - 1; i >= size; i--) {
+                bytes[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            size += digits;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+
+    record Options(Layout layout, int threads, Path data) {
+
+        static Options parse(String[] args) {
+            int dirs = SIZE;
+            int files = SIZE;
+            int lines = SIZE;
+            String template = TEMPLATE;
+            Format format = Format.TEXT;
+            int threads = Runtime.getRuntime().availableProcessors();
+            Path data = Path.of("data");
+            for (int i = 0; i < args.length; i += 2) {
+                String option = args[i];
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+                String value = args[i + 1];
+                switch (option) {
+                    case "--dirs" -> dirs = Integer.parseInt(value);
+                    case "--files" -> files = Integer.parseInt(value);
+                    case "--lines" -> lines = Integer.parseInt(value);
+                    case "--template" -> template = value;
+                    case "--format" -> format = Format.valueOf(value.toUpperCase(Locale.ROOT));
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    case "--data" -> data = Path.of(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + option);
                 }
             }
-            long t1 = System.currentTimeMillis();
-            System.out.println("completed in " + (t1 - t0) + " ms");
+            return new Options(new Layout(dirs, files, lines, template, format), threads, data);
         }
-        long tt1 = System.currentTimeMillis();
-        System.out.println("TOTAL: " + (tt1 - tt0) + " ms");
     }
 }
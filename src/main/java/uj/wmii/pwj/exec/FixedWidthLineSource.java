@@ -0,0 +1,116 @@
+package uj.wmii.pwj.exec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * {@link LineSource} for files written in the {@link FilesCreator.Format#FIXED fixed-width} format, where
+ * every line takes the same number of bytes. Line {@code k} starts at byte {@code k * recordWidth}, so a
+ * lookup is one positional read of one record: no scanning, no index, no cached state.
+ * <p>
+ * The padding spaces are stripped from the line read, together with any trailing spaces of its own.
+ */
+public final class FixedWidthLineSource implements LineSource {
+
+    private final Path root;
+    private final int recordWidth;
+
+    /**
+     * @param recordWidth bytes every line takes, its {@code \n} included
+     */
+    public FixedWidthLineSource(Path root, int recordWidth) {
+        if (root == null) {
+            throw new NullPointerException("Root cannot be null");
+        }
+        if (recordWidth <= 0) {
+            throw new IllegalArgumentException("Record width must be positive");
+        }
+        this.root = root;
+        this.recordWidth = recordWidth;
+    }
+
+    /**
+     * Opens a data tree, taking the record width from the first line of its first file.
+     */
+    public static FixedWidthLineSource open(Path root) throws IOException {
+        Path first = new LineQuery(0, 0, 0).resolve(root);
+        try (FileChannel channel = FileChannel.open(first)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            while (channel.read(buffer) > 0) {
+                for (int i = 0; i < buffer.position(); i++) {
+                    if (buffer.get(i) == '\n') {
+                        return new FixedWidthLineSource(root, i + 1);
+                    }
+                }
+                if (!buffer.hasRemaining()) {
+                    break;
+                }
+            }
+        }
+        throw new IOException("No fixed-width record found in " + first);
+    }
+
+    public int recordWidth() {
+        return recordWidth;
+    }
+
+    @Override
+    public String line(LineQuery query) throws IOException {
+        Path file = query.resolve(root);
+        try (FileChannel channel = FileChannel.open(file)) {
+            String line = read(channel, query.line(), ByteBuffer.allocate(recordWidth), file);
+            if (line == null) {
+                throw new IndexOutOfBoundsException("Line " + query.line() + " of " + file);
+            }
+            return line;
+        }
+    }
+
+    /**
+     * Opens the file once and reads one record per query.
+     */
+    @Override
+    public String[] lines(List<LineQuery> queries) throws IOException {
+        Path file = queries.get(0).resolve(root);
+        String[] lines = new String[queries.size()];
+        ByteBuffer buffer = ByteBuffer.allocate(recordWidth);
+        try (FileChannel channel = FileChannel.open(file)) {
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = read(channel, queries.get(i).line(), buffer, file);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return the line, or {@code null} if the file does not have it
+     */
+    private String read(FileChannel channel, int line, ByteBuffer buffer, Path file) throws IOException {
+        if (line < 0) {
+            return null;
+        }
+        buffer.clear();
+        long position = (long) line * recordWidth;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        if (buffer.position() == 0) {
+            return null;
+        }
+        if (buffer.hasRemaining() || buffer.get(recordWidth - 1) != '\n') {
+            throw new IOException("Not a file of " + recordWidth + "-byte records: " + file);
+        }
+        int end = recordWidth - 1;
+        while (end > 0 && buffer.get(end - 1) == ' ') {
+            end--;
+        }
+        return new String(buffer.array(), 0, end, StandardCharsets.UTF_8);
+    }
+}
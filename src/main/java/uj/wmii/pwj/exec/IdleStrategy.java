@@ -0,0 +1,79 @@
+package uj.wmii.pwj.exec;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How an idle worker of {@link MyExecService} waits for the next task, trading CPU for hand-off latency.
+ * <p>
+ * Apart from {@link #blocking()}, a worker polls the queue without blocking and calls {@link #idle(int)}
+ * after every empty poll, so a producer never has to wake it: the worker notices a new task within one
+ * idle step. The effect shows in the queue-wait histogram of {@link MyExecService#metrics()}.
+ */
+@FunctionalInterface
+public interface IdleStrategy {
+
+    /**
+     * Waits a little after an empty poll.
+     *
+     * @param idleCount number of empty polls in a row before this one, starting at 0
+     */
+    void idle(int idleCount);
+
+    /**
+     * Sleeps inside the queue until a producer signals a task - no CPU while idle, but every hand-off
+     * after a quiet period pays for a wake-up by the OS scheduler. The default.
+     */
+    static IdleStrategy blocking() {
+        return BlockingIdleStrategy.INSTANCE;
+    }
+
+    /**
+     * Polls in a tight loop: the lowest latency, at the price of a fully busy core per idle worker.
+     */
+    static IdleStrategy busySpin() {
+        return idleCount -> Thread.onSpinWait();
+    }
+
+    /**
+     * Spins for the given number of empty polls, then yields the core to other threads between polls.
+     */
+    static IdleStrategy spinThenYield(int spins) {
+        if (spins < 0) {
+            throw new IllegalArgumentException("Spins cannot be negative");
+        }
+        return idleCount -> {
+            if (idleCount < spins) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        };
+    }
+
+    /**
+     * Spins, then yields, then parks for a period that doubles from {@code minPark} up to {@code maxPark},
+     * which also bounds how late a worker can notice a task after a long quiet period.
+     */
+    static IdleStrategy backoff(int spins, int yields, long minPark, long maxPark, TimeUnit unit) {
+        if (spins < 0 || yields < 0) {
+            throw new IllegalArgumentException("Spins and yields cannot be negative");
+        }
+        long minParkNanos = unit.toNanos(minPark);
+        long maxParkNanos = unit.toNanos(maxPark);
+        if (minParkNanos <= 0 || maxParkNanos < minParkNanos) {
+            throw new IllegalArgumentException("Park times must satisfy 0 < minPark <= maxPark");
+        }
+        return idleCount -> {
+            if (idleCount < spins) {
+                Thread.onSpinWait();
+            } else if (idleCount < spins + yields) {
+                Thread.yield();
+            } else {
+                int doublings = Math.min(idleCount - spins - yields, 62);
+                long parkNanos = minParkNanos << doublings;
+                LockSupport.parkNanos(parkNanos > 0 && parkNanos < maxParkNanos ? parkNanos : maxParkNanos);
+            }
+        };
+    }
+}
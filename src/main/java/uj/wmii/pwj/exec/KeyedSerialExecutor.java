@@ -0,0 +1,200 @@
+package uj.wmii.pwj.exec;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs tasks with equal keys one after another, in submission order, while tasks with different keys
+ * run in parallel on a shared {@link Executor}.
+ * <p>
+ * Each active key has a mailbox: a queue of tasks plus a pending counter. The mailbox itself is the
+ * task handed to the executor whenever it goes from empty to non-empty, so a key never costs a thread
+ * and occupies at most one worker at a time. A mailbox retires and leaves the map as soon as it drains.
+ */
+public class KeyedSerialExecutor {
+
+    /**
+     * Tasks one mailbox runs before yielding its worker to other keys.
+     */
+    private static final int BATCH_SIZE = 64;
+    /**
+     * Polls a mailbox spins through while a counted task is still on its way, before it starts parking.
+     */
+    private static final int SPIN_TRIES = 64;
+    private static final long BACKOFF_NANOS = 10_000;
+
+    private final Executor executor;
+    private final ConcurrentHashMap<Object, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    public KeyedSerialExecutor(Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("Executor cannot be null");
+        }
+        this.executor = executor;
+    }
+
+    public <T> Future<T> submit(Object key, Callable<T> task) {
+        if (task == null) {
+            throw new NullPointerException("Task cannot be null");
+        }
+        FutureTask<T> futureTask = new FutureTask<>(task);
+        execute(key, futureTask);
+        return futureTask;
+    }
+
+    public void execute(Object key, Runnable command) {
+        if (key == null || command == null) {
+            throw new NullPointerException("Key and command cannot be null");
+        }
+        while (true) {
+            Mailbox mailbox = mailboxes.computeIfAbsent(key, Mailbox::new);
+            if (mailbox.add(command)) {
+                return;
+            }
+            // The mailbox retired between lookup and add; the next lookup creates a fresh one.
+        }
+    }
+
+    /**
+     * Number of keys with queued or running tasks.
+     */
+    public int activeKeys() {
+        return mailboxes.size();
+    }
+
+    private final class Mailbox implements Runnable, Discardable {
+        private static final int RETIRED = -1;
+
+        private final Object key;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        /**
+         * The thread handing the mailbox back to the executor after a batch. An executor that runs it right
+         * away on that thread, as caller-runs does on a full queue, finds it here and returns, and the
+         * draining loop carries on instead of recursing one frame per batch. Only that thread ever finds
+         * itself here, so a stale value seen by another worker is harmless.
+         */
+        private Thread resubmitting;
+        private boolean ranInline;
+
+        Mailbox(Object key) {
+            this.key = key;
+        }
+
+        boolean add(Runnable command) {
+            int n;
+            do {
+                n = pending.get();
+                if (n == RETIRED) {
+                    return false;
+                }
+            } while (!pending.compareAndSet(n, n + 1));
+            tasks.offer(command);
+            if (n == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Adds racing with this one saw a scheduled mailbox and queued behind it; settle them
+                    // all, this command included, so that pending reaches zero and the key does not stall.
+                    drain(false);
+                    throw e;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            if (resubmitting == Thread.currentThread()) {
+                ranInline = true;
+                return;
+            }
+            drain(true);
+        }
+
+        /**
+         * The mailbox was evicted from a full queue: its tasks are dropped in turn, so that pending still
+         * reaches zero and the key does not stall behind a mailbox that will never run.
+         */
+        @Override
+        public void discard() {
+            drain(false);
+        }
+
+        private void drain(boolean run) {
+            for (int i = 0; ; i++) {
+                if (run && i == BATCH_SIZE) {
+                    if (resubmit()) {
+                        return;
+                    }
+                    i = 0;
+                }
+                Runnable task = nextTask();
+                if (run) {
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        Thread current = Thread.currentThread();
+                        current.getUncaughtExceptionHandler().uncaughtException(current, t);
+                    }
+                } else {
+                    Discardable.drop(task);
+                }
+                if (pending.decrementAndGet() == 0) {
+                    // Either we retire, or a concurrent add() saw zero and has already rescheduled us.
+                    retire();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Hands the mailbox back to the executor so that other keys get a turn.
+         *
+         * @return false if this thread has to keep draining: the executor ran the mailbox inline, or
+         * rejected it while shutting down, when the accepted tasks are finished here instead
+         */
+        private boolean resubmit() {
+            resubmitting = Thread.currentThread();
+            ranInline = false;
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                return false;
+            } finally {
+                resubmitting = null;
+            }
+            return !ranInline;
+        }
+
+        /**
+         * Takes the next task, which pending already counts. It is raised before the offer, so the task may
+         * still be on its way; a producer descheduled in between is waited for with short parks.
+         */
+        private Runnable nextTask() {
+            Runnable task;
+            for (int spins = 0; (task = tasks.poll()) == null; spins++) {
+                if (spins < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(this, BACKOFF_NANOS);
+                }
+            }
+            return task;
+        }
+
+        private void retire() {
+            if (pending.compareAndSet(0, RETIRED)) {
+                mailboxes.remove(key, this);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package uj.wmii.pwj.exec;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of durations in nanoseconds, in the spirit of HdrHistogram: every
+ * power of two is split into {@value #SUB_BUCKETS} linear buckets, so a recorded value is off by at
+ * most ~3%. Recording is a single atomic increment and may happen from any number of threads.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(nanos, 0)));
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Highest value that falls into the given bucket.
+     */
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + subBucket) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * Point-in-time copy of a {@link LatencyHistogram}.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.totalCount = total;
+        }
+
+        public long count() {
+            return totalCount;
+        }
+
+        /**
+         * Value below which the given fraction of recorded values lies, e.g. {@code percentile(0.99)}.
+         */
+        public long percentile(double fraction) {
+            if (totalCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * totalCount));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBoundOf(i);
+                }
+            }
+            return upperBoundOf(counts.length - 1);
+        }
+
+        public long max() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0) {
+                    return upperBoundOf(i);
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d p50=%dus p99=%dus p99.9=%dus max=%dus", totalCount,
+                    TimeUnit.NANOSECONDS.toMicros(percentile(0.5)),
+                    TimeUnit.NANOSECONDS.toMicros(percentile(0.99)),
+                    TimeUnit.NANOSECONDS.toMicros(percentile(0.999)),
+                    TimeUnit.NANOSECONDS.toMicros(max()));
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package uj.wmii.pwj.exec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Line-offset index of a text file, kept in a sidecar file next to it ({@code 7.txt} is indexed in
+ * {@code 7.txt.idx}). With it, one line is found with two positional reads: eight bytes of the sidecar give
+ * where the line starts and ends, and only those bytes of the text file are read and decoded.
+ * <p>
+ * Sidecar layout, big-endian: magic, size and modification time of the indexed file, line count {@code n},
+ * then {@code n + 1} int offsets: the start of every line followed by the end of the file. Lines end at
+ * {@code \n}; a {@code \r} before it is dropped, a lone {@code \r} is not a line break. Files over 2 GB are
+ * not indexed.
+ * <p>
+ * {@link #update} keeps a whole data tree indexed incrementally: a sidecar whose recorded size and
+ * modification time still match its file is left alone.
+ */
+public final class LineIndex {
+
+    static final String SUFFIX = ".idx";
+    private static final int MAGIC = 0x4C494458;
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 4;
+    private static final int SCAN_BUFFER_BYTES = 64 * 1024;
+
+    private LineIndex() {
+    }
+
+    static Path sidecarOf(Path file) {
+        return file.resolveSibling(file.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Reads line {@code line} of an indexed file.
+     *
+     * @throws IndexOutOfBoundsException if the file has fewer lines
+     * @throws java.nio.file.NoSuchFileException if the file or its sidecar does not exist
+     */
+    public static String readLine(Path file, int line) throws IOException {
+        String text = readLines(file, new int[]{line})[0];
+        if (text == null) {
+            throw new IndexOutOfBoundsException("Line " + line + " of " + file);
+        }
+        return text;
+    }
+
+    /**
+     * Reads several lines of an indexed file, opening it and its sidecar once for all of them.
+     *
+     * @return the lines in the order asked for, {@code null} for a line the file does not have
+     * @throws java.nio.file.NoSuchFileException if the file or its sidecar does not exist
+     */
+    public static String[] readLines(Path file, int[] lines) throws IOException {
+        String[] texts = new String[lines.length];
+        ByteBuffer span = ByteBuffer.allocate(8);
+        try (FileChannel index = FileChannel.open(sidecarOf(file)); FileChannel channel = FileChannel.open(file)) {
+            for (int i = 0; i < lines.length; i++) {
+                span.clear();
+                if (lines[i] < 0 || readFully(index, span, HEADER_BYTES + 4L * lines[i]) < 8) {
+                    continue;
+                }
+                int start = span.getInt(0);
+                ByteBuffer bytes = ByteBuffer.allocate(span.getInt(4) - start);
+                readFully(channel, bytes, start);
+                texts[i] = decodeLine(bytes, new int[]{0, bytes.position()}, 0);
+            }
+        }
+        return texts;
+    }
+
+    /**
+     * Offsets of every line start in the buffer's contents, followed by the end of the contents. Line
+     * {@code i} spans {@code [starts[i], starts[i + 1])}, terminator included.
+     */
+    static int[] lineStarts(ByteBuffer bytes) {
+        IntList starts = new IntList();
+        starts.add(0);
+        int size = bytes.limit();
+        for (int i = 0; i < size; i++) {
+            if (bytes.get(i) == '\n') {
+                starts.add(i + 1);
+            }
+        }
+        if (starts.get(starts.size() - 1) != size) {
+            starts.add(size);
+        }
+        return starts.toArray();
+    }
+
+    /**
+     * Decodes line {@code line} out of contents scanned by {@link #lineStarts}, without its terminator.
+     *
+     * @throws IndexOutOfBoundsException if there are fewer lines
+     */
+    static String decodeLine(ByteBuffer bytes, int[] starts, int line) {
+        if (line < 0 || line >= starts.length - 1) {
+            throw new IndexOutOfBoundsException("Line " + line);
+        }
+        int start = starts[line];
+        int end = starts[line + 1];
+        if (end > start && bytes.get(end - 1) == '\n') {
+            end--;
+            if (end > start && bytes.get(end - 1) == '\r') {
+                end--;
+            }
+        }
+        byte[] dst = new byte[end - start];
+        // Absolute get leaves the buffer's position alone, so concurrent readers may share it.
+        bytes.get(start, dst);
+        return new String(dst, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads from {@code position} until the buffer is full or the channel ends.
+     *
+     * @return bytes read
+     */
+    static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Scans the file and writes its sidecar, replacing any previous one.
+     */
+    public static void build(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (attributes.size() > Integer.MAX_VALUE) {
+            throw new IOException("File too large to index: " + file);
+        }
+        IntList offsets = new IntList();
+        offsets.add(0);
+        long position = 0;
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+            int n;
+            while ((n = channel.read(buffer)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    if (buffer.get(i) == '\n') {
+                        offsets.add((int) (position + i + 1));
+                    }
+                }
+                position += n;
+                buffer.clear();
+            }
+        }
+        // The last line needs no terminator; without one it still ends at the end of the file.
+        if (offsets.get(offsets.size() - 1) != position) {
+            offsets.add((int) position);
+        }
+        int lines = offsets.size() - 1;
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + 4 * offsets.size());
+        out.putInt(MAGIC).putLong(position).putLong(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)).putInt(lines);
+        for (int i = 0; i < offsets.size(); i++) {
+            out.putInt(offsets.get(i));
+        }
+        out.flip();
+        // Written aside and moved in place, so a concurrent reader never sees half a sidecar.
+        Path sidecar = sidecarOf(file);
+        Path partial = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        Files.move(partial, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Whether the sidecar exists and was built from the file as it is now, judged by size and modification time.
+     */
+    static boolean isCurrent(Path file) throws IOException {
+        Path sidecar = sidecarOf(file);
+        if (!Files.exists(sidecar)) {
+            return false;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(sidecar)) {
+            if (readFully(channel, header, 0) < HEADER_BYTES) {
+                return false;
+            }
+        }
+        return header.getInt(0) == MAGIC
+                && header.getLong(4) == attributes.size()
+                && header.getLong(12) == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Brings the index of every {@code *.txt} file in the directories under {@code root} up to date, one
+     * directory per task on {@code threads} workers. Stale and missing sidecars are rebuilt, sidecars
+     * whose file is gone are deleted.
+     */
+    public static UpdateResult update(Path root, int threads) throws IOException, InterruptedException {
+        List<Path> dirs;
+        try (Stream<Path> entries = Files.list(root)) {
+            dirs = entries.filter(Files::isDirectory).toList();
+        }
+        long startNanos = System.nanoTime();
+        List<Callable<UpdateResult>> tasks = new ArrayList<>(dirs.size());
+        for (Path dir : dirs) {
+            tasks.add(() -> updateDirectory(dir));
+        }
+        MyExecService executor = MyExecService.builder().threads(threads).build();
+        UpdateResult total = new UpdateResult(0, 0, 0, 0);
+        try {
+            for (Future<UpdateResult> result : executor.submitAll(tasks)) {
+                total = total.plus(result.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Indexing failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return new UpdateResult(total.rebuilt(), total.upToDate(), total.removed(), System.nanoTime() - startNanos);
+    }
+
+    private static UpdateResult updateDirectory(Path dir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> entries = Files.list(dir)) {
+            files = entries.toList();
+        }
+        int rebuilt = 0;
+        int upToDate = 0;
+        int removed = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(".txt")) {
+                if (isCurrent(file)) {
+                    upToDate++;
+                } else {
+                    build(file);
+                    rebuilt++;
+                }
+            } else if (name.endsWith(".txt" + SUFFIX)) {
+                Path indexed = file.resolveSibling(name.substring(0, name.length() - SUFFIX.length()));
+                if (!Files.exists(indexed) && Files.deleteIfExists(file)) {
+                    removed++;
+                }
+            }
+        }
+        return new UpdateResult(rebuilt, upToDate, removed, 0);
+    }
+
+    /**
+     * Outcome of an {@link #update}.
+     *
+     * @param rebuilt  sidecars written because they were missing or stale
+     * @param upToDate sidecars left alone
+     * @param removed  sidecars deleted along with their file
+     */
+    public record UpdateResult(int rebuilt, int upToDate, int removed, long elapsedNanos) {
+
+        UpdateResult plus(UpdateResult other) {
+            return new UpdateResult(rebuilt + other.rebuilt, upToDate + other.upToDate, removed + other.removed,
+                    elapsedNanos + other.elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Index: %d rebuilt, %d up to date, %d removed in %d ms", rebuilt, upToDate, removed,
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        }
+    }
+
+    /**
+     * Growable int array, so offsets are not boxed while a file is scanned.
+     */
+    static final class IntList {
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
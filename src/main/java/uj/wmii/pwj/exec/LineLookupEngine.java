@@ -0,0 +1,265 @@
+package uj.wmii.pwj.exec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Runs a stream of {@link LineQuery line queries} against a {@link LineSource} in parallel and reports how
+ * it went. At most {@code concurrency} tasks are in flight at any time: the producer waits for a permit
+ * before dispatching the next one, so a long stream never piles up as queued tasks or live threads.
+ * <p>
+ * With batching switched on, queries of the same file are held back for up to a time window and answered
+ * by one task, which reads the file once for all of them through {@link LineSource#lines}. A batch leaves
+ * as soon as it is full or its window has passed; the window is checked as queries arrive, and whatever is
+ * left is flushed when the stream ends. Wider windows batch more, at the price of the time a query waits.
+ */
+public final class LineLookupEngine {
+
+    /**
+     * Where each lookup runs.
+     */
+    public enum Mode {
+        /**
+         * A new platform thread per lookup, the way the original walker worked. Kept for comparison.
+         */
+        THREAD,
+        /**
+         * A {@link MyExecService} with a fixed number of workers, created for the run.
+         */
+        POOL,
+        /**
+         * A {@link VirtualThreadExecService}, created for the run: a new virtual thread per lookup.
+         */
+        VIRTUAL
+    }
+
+    private final LineSource source;
+    private final Mode mode;
+    private final int concurrency;
+    private final int poolThreads;
+    private final int maxBatchSize;
+    private final long batchWindowNanos;
+
+    /**
+     * @param concurrency tasks in flight at most
+     * @param poolThreads workers of the executor in {@link Mode#POOL}, ignored otherwise
+     */
+    public LineLookupEngine(LineSource source, Mode mode, int concurrency, int poolThreads) {
+        this(source, mode, concurrency, poolThreads, 1, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param maxBatchSize queries of one file answered by a single task at most; 1 switches batching off
+     * @param batchWindow  time the first query of a batch waits for more at most
+     */
+    public LineLookupEngine(LineSource source, Mode mode, int concurrency, int poolThreads, int maxBatchSize,
+                            long batchWindow, TimeUnit unit) {
+        if (source == null || mode == null) {
+            throw new NullPointerException("Source and mode cannot be null");
+        }
+        if (concurrency <= 0 || poolThreads <= 0) {
+            throw new IllegalArgumentException("Concurrency and number of threads must be positive");
+        }
+        if (maxBatchSize <= 0 || batchWindow < 0) {
+            throw new IllegalArgumentException("Batch size must be positive and batch window not negative");
+        }
+        this.source = source;
+        this.mode = mode;
+        this.concurrency = concurrency;
+        this.poolThreads = poolThreads;
+        this.maxBatchSize = maxBatchSize;
+        this.batchWindowNanos = unit.toNanos(batchWindow);
+    }
+
+    /**
+     * Runs every query and waits for the last one to finish. A lookup that throws counts as a failure
+     * and does not stop the run.
+     */
+    public Report run(Stream<LineQuery> queries) throws InterruptedException {
+        Run run = new Run();
+        long startNanos = System.nanoTime();
+        try {
+            Iterator<LineQuery> it = queries.iterator();
+            if (maxBatchSize == 1) {
+                while (it.hasNext()) {
+                    run.permits.acquire();
+                    run.dispatch(List.of(new Pending(it.next(), System.nanoTime())));
+                }
+            } else {
+                runBatched(it, run);
+            }
+            // Every permit back means every task has finished.
+            run.permits.acquire(concurrency);
+        } finally {
+            if (run.executor != null) {
+                run.executor.shutdown();
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        return new Report(mode, run.lookups, run.tasks, run.failures.sum(), run.chars.sum(), elapsedNanos,
+                run.latency.snapshot());
+    }
+
+    private void runBatched(Iterator<LineQuery> it, Run run) throws InterruptedException {
+        // Open batches by file, oldest first.
+        LinkedHashMap<Long, Batch> open = new LinkedHashMap<>();
+        while (it.hasNext()) {
+            LineQuery query = it.next();
+            long now = System.nanoTime();
+            Batch batch = open.computeIfAbsent(query.fileKey(), key -> new Batch(now));
+            batch.queries.add(new Pending(query, now));
+            if (batch.queries.size() >= maxBatchSize) {
+                open.remove(query.fileKey());
+                run.permits.acquire();
+                run.dispatch(batch.queries);
+            }
+            Iterator<Batch> eldest = open.values().iterator();
+            while (eldest.hasNext()) {
+                Batch expired = eldest.next();
+                if (now - expired.openedNanos < batchWindowNanos) {
+                    break;
+                }
+                eldest.remove();
+                run.permits.acquire();
+                run.dispatch(expired.queries);
+            }
+        }
+        for (Batch batch : open.values()) {
+            run.permits.acquire();
+            run.dispatch(batch.queries);
+        }
+    }
+
+    /**
+     * A query with the time the engine took it from the stream, where its latency starts.
+     */
+    private record Pending(LineQuery query, long arrivedNanos) {
+    }
+
+    private static final class Batch {
+        final long openedNanos;
+        final List<Pending> queries = new ArrayList<>();
+
+        Batch(long openedNanos) {
+            this.openedNanos = openedNanos;
+        }
+    }
+
+    /**
+     * State of one {@link #run(Stream)}.
+     */
+    private final class Run {
+        final Semaphore permits = new Semaphore(concurrency);
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder failures = new LongAdder();
+        final LongAdder chars = new LongAdder();
+        // No concurrency cap of its own in VIRTUAL mode: the permits above already bound the threads.
+        final ExecutorService executor = switch (mode) {
+            case THREAD -> null;
+            case POOL -> MyExecService.builder().threads(poolThreads).build();
+            case VIRTUAL -> VirtualThreadExecService.newInstance();
+        };
+        // Only touched by the producer.
+        long lookups;
+        long tasks;
+
+        /**
+         * Starts a task answering the queries; the caller holds a permit for it, which the task gives back.
+         */
+        void dispatch(List<Pending> queries) {
+            Runnable task = () -> {
+                try {
+                    answer(queries);
+                } finally {
+                    permits.release();
+                }
+            };
+            try {
+                if (executor == null) {
+                    Thread.ofPlatform().name("T-" + tasks).start(task);
+                } else {
+                    executor.execute(task);
+                }
+            } catch (RuntimeException | Error e) {
+                permits.release();
+                throw e;
+            }
+            lookups += queries.size();
+            tasks++;
+        }
+
+        private void answer(List<Pending> queries) {
+            if (queries.size() == 1) {
+                Pending pending = queries.get(0);
+                try {
+                    chars.add(source.line(pending.query()).length());
+                } catch (IOException | RuntimeException e) {
+                    failures.increment();
+                } finally {
+                    latency.record(System.nanoTime() - pending.arrivedNanos());
+                }
+                return;
+            }
+            List<LineQuery> batch = new ArrayList<>(queries.size());
+            for (Pending pending : queries) {
+                batch.add(pending.query());
+            }
+            String[] lines;
+            try {
+                lines = source.lines(batch);
+            } catch (IOException | RuntimeException e) {
+                lines = new String[queries.size()];
+            }
+            long now = System.nanoTime();
+            for (int i = 0; i < lines.length; i++) {
+                if (lines[i] == null) {
+                    failures.increment();
+                } else {
+                    chars.add(lines[i].length());
+                }
+                latency.record(now - queries.get(i).arrivedNanos());
+            }
+        }
+    }
+
+    /**
+     * Outcome of one {@link #run(Stream)}.
+     *
+     * @param tasks        tasks dispatched; fewer than lookups when batching groups queries
+     * @param chars        characters in all lines found, so the lookups cannot be optimised away
+     * @param elapsedNanos from the first query taken until the last lookup finished
+     * @param latency      per lookup, from when it was taken from the stream until it was answered, in nanoseconds
+     */
+    public record Report(Mode mode, long lookups, long tasks, long failures, long chars, long elapsedNanos,
+                         LatencyHistogram.Snapshot latency) {
+
+        /**
+         * Lookups per second.
+         */
+        public double throughput() {
+            return elapsedNanos == 0 ? 0 : lookups * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Lookups answered per task; 1 without batching.
+         */
+        public double batchingFactor() {
+            return tasks == 0 ? 0 : (double) lookups / tasks;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d lookups in %d ms, %.0f lookups/s, %.2f lookups/task, %d failed, latency %s",
+                    mode, lookups, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), throughput(), batchingFactor(),
+                    failures, latency);
+        }
+    }
+}
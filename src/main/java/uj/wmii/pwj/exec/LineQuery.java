@@ -0,0 +1,21 @@
+package uj.wmii.pwj.exec;
+
+import java.nio.file.Path;
+
+/**
+ * One lookup of the {@link FileThreadWalker} workload: line {@code line} of file {@code file} in directory
+ * {@code dir}, all numbered from zero and laid out by {@link FilesCreator} as {@code <root>/<dir>/<file>.txt}.
+ */
+public record LineQuery(int dir, int file, int line) {
+
+    public Path resolve(Path root) {
+        return root.resolve(Integer.toString(dir)).resolve(file + ".txt");
+    }
+
+    /**
+     * Identifies the file alone, for caches keyed by file; equal for queries of the same file.
+     */
+    public long fileKey() {
+        return (long) dir << 32 | (file & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,85 @@
+package uj.wmii.pwj.exec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Answers {@link LineQuery line queries} for a {@link LineLookupEngine}. Implementations are called from
+ * many threads at once.
+ */
+@FunctionalInterface
+public interface LineSource {
+
+    /**
+     * @throws IndexOutOfBoundsException if the file has fewer lines than asked for
+     */
+    String line(LineQuery query) throws IOException;
+
+    /**
+     * Answers several queries of one file together. By default every query goes to {@link #line}; sources
+     * that pay for each opened file read it once for the whole batch instead.
+     *
+     * @param queries queries of the same file
+     * @return the lines in query order, {@code null} for a line the file does not have
+     */
+    default String[] lines(List<LineQuery> queries) throws IOException {
+        String[] lines = new String[queries.size()];
+        for (int i = 0; i < lines.length; i++) {
+            try {
+                lines[i] = line(queries.get(i));
+            } catch (IndexOutOfBoundsException e) {
+                // Left null: the rest of the batch is still answered.
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Reads the whole file for every query and picks the line, as the original walker did. A batch
+     * reads the file once.
+     */
+    static LineSource readAllLines(Path root) {
+        return new LineSource() {
+            @Override
+            public String line(LineQuery query) throws IOException {
+                return Files.readAllLines(query.resolve(root)).get(query.line());
+            }
+
+            @Override
+            public String[] lines(List<LineQuery> queries) throws IOException {
+                List<String> all = Files.readAllLines(queries.get(0).resolve(root));
+                String[] lines = new String[queries.size()];
+                for (int i = 0; i < lines.length; i++) {
+                    int line = queries.get(i).line();
+                    lines[i] = line >= 0 && line < all.size() ? all.get(line) : null;
+                }
+                return lines;
+            }
+        };
+    }
+
+    /**
+     * Reads only the requested line, located through the {@link LineIndex} sidecar of the file. The index
+     * must have been brought up to date with {@link LineIndex#update} beforehand. A batch opens the file
+     * and its sidecar once.
+     */
+    static LineSource indexed(Path root) {
+        return new LineSource() {
+            @Override
+            public String line(LineQuery query) throws IOException {
+                return LineIndex.readLine(query.resolve(root), query.line());
+            }
+
+            @Override
+            public String[] lines(List<LineQuery> queries) throws IOException {
+                int[] lines = new int[queries.size()];
+                for (int i = 0; i < lines.length; i++) {
+                    lines[i] = queries.get(i).line();
+                }
+                return LineIndex.readLines(queries.get(0).resolve(root), lines);
+            }
+        };
+    }
+}
@@ -0,0 +1,65 @@
+package uj.wmii.pwj.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Default task queue of {@link MyExecService}: an optionally bounded linked queue with separate locks for
+ * producers and consumers, like {@link java.util.concurrent.LinkedBlockingQueue}, plus {@link #offerAll}.
+ * <p>
+ * A batch is linked in under one producer lock, and costs a single wake-up on the submitting thread.
+ */
+class LinkedTaskQueue<E> extends AbstractTaskQueue<E> {
+
+    private static final class Node<E> {
+        E item;
+        // Written under putLock, read under takeLock; the count update orders the two.
+        Node<E> next;
+
+        Node(E item) {
+            this.item = item;
+        }
+    }
+
+    // head is a sentinel whose successor holds the first element.
+    private Node<E> head;
+    private Node<E> last;
+
+    LinkedTaskQueue() {
+        this(Integer.MAX_VALUE);
+    }
+
+    LinkedTaskQueue(int capacity) {
+        super(capacity, true);
+        this.head = this.last = new Node<>(null);
+    }
+
+    @Override
+    void insert(E e) {
+        last = last.next = new Node<>(e);
+    }
+
+    @Override
+    E extract() {
+        Node<E> first = head.next;
+        head = first;
+        E item = first.item;
+        first.item = null;
+        return item;
+    }
+
+    @Override
+    E first() {
+        Node<E> first = head.next;
+        return first == null ? null : first.item;
+    }
+
+    @Override
+    List<E> snapshot() {
+        List<E> elements = new ArrayList<>(size());
+        for (Node<E> node = head.next; node != null; node = node.next) {
+            elements.add(node.item);
+        }
+        return elements;
+    }
+}
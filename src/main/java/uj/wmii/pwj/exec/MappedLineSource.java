@@ -0,0 +1,121 @@
+package uj.wmii.pwj.exec;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link LineSource} that memory-maps data files. A file is mapped and scanned for line breaks once;
+ * later lookups in it copy just the bytes of the requested line out of the mapping, with no system
+ * call at all.
+ * <p>
+ * Mappings live in a bounded LRU cache shared by all threads, split into stripes with a lock each, so
+ * lookups in different files rarely wait for one another. An evicted mapping is released when the
+ * garbage collector reclaims its buffer; keep the bound well below the system's limit on mappings per
+ * process ({@code vm.max_map_count} on Linux).
+ */
+public final class MappedLineSource implements LineSource {
+
+    private final Path root;
+    private final Stripe[] stripes = new Stripe[FileStripes.COUNT];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxMappings files mapped at most at the same time
+     */
+    public MappedLineSource(Path root, int maxMappings) {
+        if (root == null) {
+            throw new NullPointerException("Root cannot be null");
+        }
+        if (maxMappings < FileStripes.COUNT) {
+            throw new IllegalArgumentException("At least " + FileStripes.COUNT + " mappings are needed");
+        }
+        this.root = root;
+        for (int i = 0; i < FileStripes.COUNT; i++) {
+            stripes[i] = new Stripe(maxMappings / FileStripes.COUNT);
+        }
+    }
+
+    @Override
+    public String line(LineQuery query) throws IOException {
+        // Keyed by numbers rather than by path, so a hit does not even build the path.
+        long key = query.fileKey();
+        Stripe stripe = stripes[FileStripes.of(key)];
+        Mapping mapping;
+        synchronized (stripe) {
+            mapping = stripe.get(key);
+        }
+        if (mapping != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            // Mapped outside the lock; two threads racing for one file both map it, and one copy wins.
+            mapping = map(query);
+            synchronized (stripe) {
+                Mapping raced = stripe.putIfAbsent(key, mapping);
+                if (raced != null) {
+                    mapping = raced;
+                }
+            }
+        }
+        return mapping.line(query.line());
+    }
+
+    private Mapping map(LineQuery query) throws IOException {
+        MappedByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(query.resolve(root))) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + query.resolve(root));
+            }
+            // The mapping stays valid after the channel is closed.
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        return new Mapping(bytes, LineIndex.lineStarts(bytes));
+    }
+
+    /**
+     * Lookups answered from a cached mapping.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Lookups that had to map their file first.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * A mapped file with the offset of every line start, and of its end last.
+     */
+    private record Mapping(MappedByteBuffer bytes, int[] starts) {
+
+        String line(int line) {
+            return LineIndex.decodeLine(bytes, starts, line);
+        }
+    }
+
+    private static final class Stripe extends LinkedHashMap<Long, Mapping> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Mapping> eldest) {
+            return size() > capacity;
+        }
+    }
+}
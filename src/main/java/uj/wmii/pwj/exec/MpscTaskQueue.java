@@ -0,0 +1,259 @@
+package uj.wmii.pwj.exec;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Unbounded multi-producer / single-consumer queue.
+ * <p>
+ * Producers never lock: {@link #offer(Object)} swaps itself in as the new tail with one atomic
+ * {@code getAndSet} and then links the previous tail to it. The consumer spins for a short while when
+ * the queue is empty and parks afterwards; producers only pay for an {@code unpark} when the consumer
+ * is actually parked.
+ * <p>
+ * The consumer side takes no lock either: it moves the head on with a compare-and-set, so that
+ * {@link #drainTo(Collection)} may still be called from e.g. {@code shutdownNow()} while the worker polls.
+ * Only one thread at a time may wait in {@link #take()} or {@link #poll(long, TimeUnit)}, though, as there
+ * is a single slot for the parked consumer; hence a single processing thread.
+ * <p>
+ * {@link #size()} is read from a counter instead of walking the list, and is approximate while elements
+ * are added or removed.
+ */
+class MpscTaskQueue<E> extends AbstractQueue<E> implements BatchQueue<E> {
+
+    private static final int SPIN_TRIES = 128;
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+    private static final VarHandle NEXT;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(MpscTaskQueue.class, "head", Node.class);
+            TAIL = lookup.findVarHandle(MpscTaskQueue.class, "tail", Node.class);
+            NEXT = lookup.findVarHandle(Node.class, "next", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final class Node<E> {
+        E value;
+        volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+
+    // Consumer side: head is a sentinel whose successor holds the first element.
+    private volatile Node<E> head;
+    private volatile Node<E> tail;
+    private volatile Thread waiter;
+    private final LongAdder count = new LongAdder();
+
+    MpscTaskQueue() {
+        Node<E> sentinel = new Node<>(null);
+        this.head = sentinel;
+        this.tail = sentinel;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        Node<E> node = new Node<>(e);
+        count.increment();
+        @SuppressWarnings("unchecked")
+        Node<E> prev = (Node<E>) TAIL.getAndSet(this, node);
+        // Volatile store: it must not be reordered with the waiter read below.
+        NEXT.setVolatile(prev, node);
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+        return true;
+    }
+
+    /**
+     * Links the elements into a private chain first and publishes all of them with one tail swap.
+     */
+    @Override
+    public int offerAll(List<? extends E> elements) {
+        Node<E> first = null;
+        Node<E> last = null;
+        for (E e : elements) {
+            if (e == null) {
+                throw new NullPointerException();
+            }
+            Node<E> node = new Node<>(e);
+            if (first == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+        if (first == null) {
+            return 0;
+        }
+        count.add(elements.size());
+        @SuppressWarnings("unchecked")
+        Node<E> prev = (Node<E>) TAIL.getAndSet(this, last);
+        NEXT.setVolatile(prev, first);
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+        return elements.size();
+    }
+
+    @Override
+    public E poll() {
+        while (true) {
+            Node<E> h = head;
+            Node<E> next = h.next;
+            if (next == null) {
+                if (h == tail) {
+                    return null;
+                }
+                // A producer has swapped the tail but not linked it yet.
+                Thread.onSpinWait();
+            } else if (HEAD.compareAndSet(this, h, next)) {
+                // The winner owns the new sentinel's value; nodes are never reused, so there is no ABA.
+                E value = next.value;
+                next.value = null;
+                count.decrement();
+                return value;
+            }
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int i = 0; i < SPIN_TRIES; i++) {
+            E e = poll();
+            if (e != null) {
+                return e;
+            }
+            Thread.onSpinWait();
+        }
+        while (true) {
+            waiter = Thread.currentThread();
+            try {
+                E e = poll();
+                if (e != null) {
+                    return e;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            } finally {
+                waiter = null;
+            }
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        return poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void put(E e) {
+        offer(e);
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) {
+        return offer(e);
+    }
+
+    @Override
+    public E peek() {
+        Node<E> next = head.next;
+        return next == null ? null : next.value;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, Math.min(count.sum(), Integer.MAX_VALUE));
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        int n = 0;
+        E e;
+        while (n < maxElements && (e = poll()) != null) {
+            c.add(e);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Weakly consistent: reflects the elements linked at the time each node is reached.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private Node<E> node = head;
+            private E nextValue = advance();
+
+            private E advance() {
+                while ((node = node.next) != null) {
+                    E value = node.value;
+                    if (value != null) {
+                        return value;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nextValue != null;
+            }
+
+            @Override
+            public E next() {
+                if (nextValue == null) {
+                    throw new NoSuchElementException();
+                }
+                E value = nextValue;
+                nextValue = node == null ? null : advance();
+                return value;
+            }
+        };
+    }
+}
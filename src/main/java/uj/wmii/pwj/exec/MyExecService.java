@@ -1,59 +1,363 @@
 package uj.wmii.pwj.exec;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class MyExecService extends AbstractExecService implements ScheduledExecutorService {
+    private static final long TIMER_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    /**
+     * Put straight into the queue to wake a worker blocked in it at shutdown; skipped, never run.
+     */
+    private static final Runnable WAKE_UP = () -> { };
 
-public class MyExecService implements ExecutorService {
     private final BlockingQueue<Runnable> taskQueue;
-    private final Thread processingThread;
-    private boolean isShutdown = false;
-    private boolean isTerminated = false;
+    private final SaturationPolicy saturationPolicy;
+    private final WatermarkListener watermarkListener;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final AtomicBoolean aboveHighWatermark = new AtomicBoolean();
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger liveWorkers;
+    private final AtomicInteger nextWorkerIndex = new AtomicInteger();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private final int minThreads;
+    private final int maxThreads;
+    private final long keepAliveNanos;
+    private final long queueWaitTargetNanos;
+    private final IdleStrategy idleStrategy;
+    /**
+     * Null when metrics are switched off, so the hot path skips them with a single check.
+     */
+    private final ExecMetrics metrics;
+    /**
+     * Whether tasks carry their enqueue time, needed by the metrics and by elastic sizing.
+     */
+    private final boolean stampsTasks;
+    /**
+     * Set by {@link #start()} before any thread starts, since it is handed the executor itself.
+     */
+    private KeyedSerialExecutor keyedExecutor;
+    private final Queue<ScheduledTask<?>> timerAdditions = new ConcurrentLinkedQueue<>();
+    private final Queue<ScheduledTask<?>> timerCancellations = new ConcurrentLinkedQueue<>();
+    private final long timerOrigin = System.nanoTime();
+    private volatile Thread timerThread;
+    private volatile boolean timerIdle = false;
+    /**
+     * Set from start-up until the timer thread has finished its shutdown clean-up. Workers keep draining
+     * the queue meanwhile, since the timer may still hand them a task that fell due during shutdown.
+     */
+    private volatile boolean timerRunning = false;
+    private volatile Thread supervisorThread;
+    private volatile boolean isShutdown = false;
 
-    public MyExecService() {
-        this.taskQueue = new LinkedBlockingQueue<>();
+    /**
+     * Sets the executor up without starting a thread; {@link #start()} does that once the constructor
+     * has returned, so no worker can see a partially built executor.
+     */
+    private MyExecService(Builder builder) {
+        this.taskQueue = builder.createTaskQueue();
+        this.saturationPolicy = builder.saturationPolicy;
+        this.watermarkListener = builder.watermarkListener;
+        this.highWatermark = builder.highWatermark;
+        this.lowWatermark = builder.lowWatermark;
+        this.minThreads = builder.threads;
+        this.maxThreads = builder.maxThreads;
+        this.keepAliveNanos = builder.keepAliveNanos;
+        this.queueWaitTargetNanos = builder.queueWaitTargetNanos;
+        this.idleStrategy = builder.idleStrategy;
+        this.liveWorkers = new AtomicInteger(minThreads);
+        this.metrics = builder.metrics ? new ExecMetrics() : null;
+        this.stampsTasks = metrics != null || isElastic();
+    }
 
-        this.processingThread = new Thread(this::process, "MyExecService processing thread");
-        this.processingThread.start();
+    private MyExecService start() {
+        keyedExecutor = new KeyedSerialExecutor(this);
+        List<Worker> threads = new ArrayList<>(minThreads);
+        for (int i = 0; i < minThreads; i++) {
+            threads.add(new Worker(nextWorkerIndex.getAndIncrement()));
+        }
+        workers.addAll(threads);
+        for (Worker worker : threads) {
+            worker.start();
+        }
+        if (isElastic()) {
+            Thread supervisor = new Thread(this::supervise, "MyExecService supervisor thread");
+            supervisorThread = supervisor;
+            supervisor.start();
+        }
+        return this;
+    }
+
+    private boolean isElastic() {
+        return maxThreads > minThreads;
     }
 
     private void process() {
+        Worker self = (Worker) Thread.currentThread();
+        boolean retired = false;
+        boolean blocking = idleStrategy == IdleStrategy.blocking();
+        int idleCount = 0;
+        long idleSince = System.nanoTime();
         try {
-            while (!Thread.interrupted()) {
-                try {
-                    Runnable task = taskQueue.take();
-                    task.run();
-                    if (isShutdown && taskQueue.isEmpty()) {
-                        break;
+            while (!(isShutdown && taskQueue.isEmpty() && !timerRunning)) {
+                Runnable task;
+                if (blocking) {
+                    try {
+                        // Elastic workers wake up once per keep-alive period to see whether they can retire.
+                        task = isElastic() ? taskQueue.poll(keepAliveNanos, TimeUnit.NANOSECONDS) : taskQueue.take();
+                    } catch (InterruptedException e) {
+                        // Either shutdownNow() or a stale interrupt left by a cancelled task - the loop condition decides.
+                        continue;
+                    }
+                    if (task == WAKE_UP) {
+                        continue;
                     }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+                } else {
+                    task = taskQueue.poll();
+                    if (task == null) {
+                        idleStrategy.idle(idleCount);
+                        idleCount = Math.min(idleCount + 1, Integer.MAX_VALUE - 1);
+                        // A stale interrupt would turn every park into a spin.
+                        Thread.interrupted();
+                    } else {
+                        idleCount = 0;
+                    }
+                }
+                if (task != null) {
+                    checkLowWatermark();
+                    if (!dropIfExpired(task)) {
+                        self.busy = true;
+                        if (metrics == null) {
+                            runTask(task);
+                        } else {
+                            runMeasured(task);
+                        }
+                        self.busy = false;
+                    }
+                    idleSince = System.nanoTime();
+                } else if (isElastic() && System.nanoTime() - idleSince >= keepAliveNanos && tryRetire()) {
+                    retired = true;
                     break;
                 }
             }
         } finally {
-            isTerminated = true;
+            workers.remove(self);
+            if (!retired) {
+                if (liveWorkers.decrementAndGet() == 0) {
+                    terminated.countDown();
+                } else {
+                    // Pass the wake-up on to a worker that may still be blocked in the queue.
+                    wakeUpWorker();
+                }
+            }
+        }
+    }
+
+    /**
+     * Wakes idle workers so that they re-check whether to exit.
+     * <p>
+     * A worker blocked in an empty queue takes a wake-up marker and passes it on when it exits in turn. A
+     * queue that still holds tasks needs none: the worker that empties it exits next and passes the wake-up
+     * on, and real tasks keep their lane turns. Workers of the other idle strategies never block in the
+     * queue, but may be parked by a {@link IdleStrategy#backoff backoff} for up to its longest park, so every
+     * one of them is unparked.
+     */
+    private void wakeUpWorker() {
+        if (idleStrategy == IdleStrategy.blocking()) {
+            if (taskQueue.isEmpty()) {
+                taskQueue.offer(WAKE_UP);
+            }
+        } else {
+            for (Worker worker : workers) {
+                LockSupport.unpark(worker);
+            }
+        }
+    }
+
+    /**
+     * Lets an idle worker go as long as more than the minimum remain; never the last one, so termination
+     * stays with the regular exit path.
+     */
+    private boolean tryRetire() {
+        int n;
+        do {
+            n = liveWorkers.get();
+            if (n <= minThreads) {
+                return false;
+            }
+        } while (!liveWorkers.compareAndSet(n, n - 1));
+        return true;
+    }
+
+    private void addWorker() {
+        int n;
+        do {
+            n = liveWorkers.get();
+            // Zero means the executor has terminated.
+            if (n >= maxThreads || n == 0 || isShutdown) {
+                return;
+            }
+        } while (!liveWorkers.compareAndSet(n, n + 1));
+        Worker worker = new Worker(nextWorkerIndex.getAndIncrement());
+        workers.add(worker);
+        worker.start();
+    }
+
+    /**
+     * Elastic sizing loop, run every queue-wait target period. The pool grows by one worker when the
+     * oldest queued task has waited longer than the target, or when every busy worker is blocked or
+     * waiting inside its task, which queue length alone would not reveal. Shrinking is up to the workers:
+     * each one retires after the keep-alive period without work.
+     */
+    private void supervise() {
+        while (!isShutdown) {
+            LockSupport.parkNanos(this, queueWaitTargetNanos);
+            if (taskQueue.isEmpty()) {
+                continue;
+            }
+            if (oldestQueueWait() > queueWaitTargetNanos || allBusyWorkersBlocked()) {
+                addWorker();
+            }
         }
     }
+
+    private long oldestQueueWait() {
+        Runnable head = taskQueue.peek();
+        long enqueuedNanos;
+        if (head instanceof TimedCommand timed) {
+            enqueuedNanos = timed.enqueuedNanos;
+        } else if (head instanceof ExecTask<?> task) {
+            enqueuedNanos = task.enqueuedNanos;
+        } else {
+            return 0;
+        }
+        return System.nanoTime() - enqueuedNanos;
+    }
+
+    private boolean allBusyWorkersBlocked() {
+        int busy = 0;
+        for (Worker worker : workers) {
+            if (worker.busy) {
+                Thread.State state = worker.getState();
+                if (state != Thread.State.BLOCKED && state != Thread.State.WAITING
+                        && state != Thread.State.TIMED_WAITING) {
+                    return false;
+                }
+                busy++;
+            }
+        }
+        return busy > 0;
+    }
+
+    /**
+     * Current number of workers; changes over time only for executors built with elastic threads.
+     */
+    public int poolSize() {
+        return liveWorkers.get();
+    }
+
+    /**
+     * Cancels a task whose deadline passed while it was queued, instead of spending a worker on a result
+     * nobody waits for.
+     */
+    private boolean dropIfExpired(Runnable task) {
+        if (task instanceof ExecTask<?> execTask && execTask.isExpired(System.nanoTime())) {
+            execTask.cancel(false);
+            if (metrics != null) {
+                metrics.expired.increment();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            Thread current = Thread.currentThread();
+            current.getUncaughtExceptionHandler().uncaughtException(current, t);
+        }
+    }
+
+    private void runMeasured(Runnable task) {
+        long enqueuedNanos;
+        if (task instanceof TimedCommand timed) {
+            enqueuedNanos = timed.enqueuedNanos;
+            task = timed.command;
+        } else {
+            enqueuedNanos = ((ExecTask<?>) task).enqueuedNanos;
+        }
+        long startNanos = System.nanoTime();
+        metrics.queueWait.record(startNanos - enqueuedNanos);
+        boolean failed = false;
+        try {
+            task.run();
+        } catch (Throwable t) {
+            failed = true;
+            Thread current = Thread.currentThread();
+            current.getUncaughtExceptionHandler().uncaughtException(current, t);
+        }
+        metrics.runTime.record(System.nanoTime() - startNanos);
+        if (failed || task instanceof Future<?> future && future.state() == Future.State.FAILED) {
+            metrics.failed.increment();
+        } else {
+            metrics.completed.increment();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
     static MyExecService newInstance() {
-        return new MyExecService();
+        return builder().build();
+    }
+
+    static MyExecService newInstance(int nThreads) {
+        return builder().threads(nThreads).build();
+    }
+
+    /**
+     * Single processing thread fed by a lock-free {@link MpscTaskQueue} instead of a {@link LinkedTaskQueue}.
+     */
+    static MyExecService newLockFreeInstance() {
+        return builder().taskQueue(new MpscTaskQueue<>()).build();
     }
 
     @Override
     public void shutdown() {
         isShutdown = true;
+        stopTimer();
+        stopSupervisor();
+        wakeUpWorker();
     }
 
     @Override
     public List<Runnable> shutdownNow() {
         isShutdown = true;
+        stopTimer();
+        stopSupervisor();
 
         List<Runnable> notExecutedTasks = new ArrayList<>();
         taskQueue.drainTo(notExecutedTasks);
-        processingThread.interrupt();
+        notExecutedTasks.removeIf(task -> task == WAKE_UP);
+        notExecutedTasks.replaceAll(task -> task instanceof TimedCommand timed ? timed.command : task);
+        for (Worker worker : workers) {
+            worker.interrupt();
+        }
 
         return notExecutedTasks;
     }
@@ -65,271 +369,770 @@ public class MyExecService implements ExecutorService {
 
     @Override
     public boolean isTerminated() {
-        return isTerminated;
+        return terminated.getCount() == 0;
     }
 
     @Override
     public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
-        long millisTimeout = unit.toMillis(timeout);
-        processingThread.join(millisTimeout);
-        return !processingThread.isAlive();
+        return terminated.await(timeout, unit);
     }
 
-    @Override
-    public <T> Future<T> submit(Callable<T> task) {
+    private void stopSupervisor() {
+        Thread supervisor = supervisorThread;
+        if (supervisor != null) {
+            LockSupport.unpark(supervisor);
+        }
+    }
+
+    /**
+     * Like {@link #submit(Callable)}, but queued in the lane of the given priority.
+     */
+    public <T> Future<T> submit(Callable<T> task, TaskPriority priority) {
+        if (task == null || priority == null) {
+            throw new NullPointerException("Task and priority cannot be null");
+        }
+        return submitPrioritized(new ExecTask<>(task, priority));
+    }
+
+    /**
+     * Like {@link #submit(Runnable)}, but queued in the lane of the given priority.
+     */
+    public Future<?> submit(Runnable task, TaskPriority priority) {
+        if (task == null || priority == null) {
+            throw new NullPointerException("Task and priority cannot be null");
+        }
+        return submitPrioritized(new ExecTask<>(task, null, priority));
+    }
+
+    /**
+     * Like {@link #submit(Callable)}, but the task is only worth running if it starts within the timeout.
+     * A task still queued after that is cancelled instead of run, and counted as expired in the metrics.
+     * With {@link Builder#earliestDeadlineFirst earliest-deadline-first} ordering, the timeout also decides
+     * its place in the queue.
+     */
+    public <T> Future<T> submit(Callable<T> task, long timeout, TimeUnit unit) {
         if (task == null) {
             throw new NullPointerException("Task cannot be null");
         }
+        return submitWithDeadline(new ExecTask<>(task), timeout, unit);
+    }
 
-        if (isShutdown) {
+    /**
+     * {@link #submit(Callable, long, TimeUnit)} for a task without a result.
+     */
+    public Future<?> submit(Runnable task, long timeout, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("Task cannot be null");
+        }
+        return submitWithDeadline(new ExecTask<>(task, null), timeout, unit);
+    }
+
+    private <T> Future<T> submitWithDeadline(ExecTask<T> task, long timeout, TimeUnit unit) {
+        if (rejectsNewTasks()) {
             throw new RejectedExecutionException("ExecutorService is shut down");
         }
+        task.expiresAtNanos = triggerTime(timeout, unit);
+        enqueue(task);
+        return task;
+    }
 
-        FutureTask<T> futureTask = new FutureTask<>(task);
-        if (!taskQueue.offer(futureTask)) {
-            throw new RejectedExecutionException("Task queue is full");
+    private <T> Future<T> submitPrioritized(ExecTask<T> task) {
+        if (rejectsNewTasks()) {
+            throw new RejectedExecutionException("ExecutorService is shut down");
         }
-        return futureTask;
+        enqueue(task);
+        return task;
+    }
 
+    /**
+     * Runs the task after every task submitted earlier with an equal key, but in parallel with other keys.
+     */
+    public <T> Future<T> submit(Object key, Callable<T> task) {
+        return keyedExecutor.submit(key, task);
     }
 
-    @Override
-    public <T> Future<T> submit(Runnable task, T result) {
+    /**
+     * Keyed variant of {@link #execute(Runnable)}; see {@link #submit(Object, Callable)}.
+     */
+    public void execute(Object key, Runnable command) {
+        keyedExecutor.execute(key, command);
+    }
+
+    /**
+     * Runs the supplier on a worker. Dependent {@code *Async} stages of the returned future run on this
+     * executor too, each queued as a task of its own, so that none runs inside the thread that registered
+     * or completed it.
+     */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        if (supplier == null) {
+            throw new NullPointerException("Supplier cannot be null");
+        }
+        ExecCompletableFuture<T> future = new ExecCompletableFuture<>(this);
+        execute(() -> {
+            if (!future.isDone()) {
+                try {
+                    future.complete(supplier.get());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * {@link #supplyAsync(Supplier)} for a task without a result.
+     */
+    public CompletableFuture<Void> runAsync(Runnable task) {
         if (task == null) {
             throw new NullPointerException("Task cannot be null");
         }
+        return supplyAsync(() -> {
+            task.run();
+            return null;
+        });
+    }
 
-        if (isShutdown) {
-            throw new RejectedExecutionException("ExecutorService is shut down");
+    /**
+     * Opens a {@link TaskScope} on this executor for the calling thread. Opened inside a subtask of
+     * another scope, it becomes part of that scope's subtree.
+     */
+    public TaskScope openScope() {
+        return new TaskScope(this, Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #openScope()}, but the subtree is cancelled once the timeout has passed. A scope nested
+     * in another one never outlives the enclosing deadline.
+     */
+    public TaskScope openScope(long timeout, TimeUnit unit) {
+        return new TaskScope(this, triggerTime(timeout, unit));
+    }
+
+    /**
+     * Queue wait times of one priority lane.
+     *
+     * @throws IllegalStateException if this executor was not built with priority lanes
+     */
+    public LatencyHistogram queueWaitTime(TaskPriority priority) {
+        if (!(taskQueue instanceof PriorityLaneQueue lanes)) {
+            throw new IllegalStateException("Executor was not built with priority lanes");
+        }
+        return lanes.waitTime(priority);
+    }
+
+    /**
+     * Current counters and latency histograms.
+     *
+     * @throws IllegalStateException if this executor was built with metrics switched off
+     */
+    public ExecMetrics.Snapshot metrics() {
+        if (metrics == null) {
+            throw new IllegalStateException("Executor was built without metrics");
         }
+        return metrics.snapshot(taskQueue.size());
+    }
 
-        FutureTask<T> futureTask = new FutureTask<>(task, result);
-        if (!taskQueue.offer(futureTask)) {
-            throw new RejectedExecutionException("Task queue is full");
+    /**
+     * Registers a {@link MyExecServiceMXBean} for this executor with the platform MBean server.
+     *
+     * @return the name it was registered under, for unregistering
+     * @throws IllegalStateException if this executor was built with metrics switched off
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        if (metrics == null) {
+            throw new IllegalStateException("Executor was built without metrics");
         }
-        return futureTask;
+        ObjectName objectName = new ObjectName("uj.wmii.pwj.exec:type=MyExecService,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMXBean(), objectName);
+        return objectName;
     }
 
     @Override
-    public Future<?> submit(Runnable task) {
-        if (task == null) {
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        if (command == null) {
+            throw new NullPointerException("Command cannot be null");
+        }
+        return delayedExecute(new ScheduledTask<>(this, command, triggerTime(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        if (callable == null) {
             throw new NullPointerException("Task cannot be null");
         }
+        return delayedExecute(new ScheduledTask<>(this, callable, triggerTime(delay, unit)));
+    }
 
-        if (isShutdown) {
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (command == null) {
+            throw new NullPointerException("Command cannot be null");
+        }
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        return delayedExecute(new ScheduledTask<>(this, command, triggerTime(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (command == null) {
+            throw new NullPointerException("Command cannot be null");
+        }
+        if (delay <= 0) {
+            throw new IllegalArgumentException("Delay must be positive");
+        }
+        return delayedExecute(new ScheduledTask<>(this, command, triggerTime(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    /**
+     * Runs {@code action} on the timer thread itself once {@code deadlineNanos} has passed, so that it does
+     * not wait behind queued tasks or for a free worker. Only for short actions: every other timer waits
+     * for it.
+     *
+     * @return the pending action, or {@code null} if the executor is shut down
+     */
+    ScheduledFuture<?> scheduleOnTimerThread(Runnable action, long deadlineNanos) {
+        if (rejectsNewTasks()) {
+            return null;
+        }
+        ScheduledTask<?> task = new ScheduledTask<>(this, action, deadlineNanos, 0, true);
+        addTimer(task);
+        return task;
+    }
+
+    private static long triggerTime(long delay, TimeUnit unit) {
+        // Capped so that deadline arithmetic cannot overflow.
+        long delayNanos = Math.min(unit.toNanos(Math.max(delay, 0)), Long.MAX_VALUE >> 2);
+        return System.nanoTime() + delayNanos;
+    }
+
+    private <V> ScheduledTask<V> delayedExecute(ScheduledTask<V> task) {
+        if (rejectsNewTasks()) {
             throw new RejectedExecutionException("ExecutorService is shut down");
         }
+        addTimer(task);
+        return task;
+    }
 
-        FutureTask<?> futureTask = new FutureTask<>(task, null);
-        if (!taskQueue.offer(futureTask)) {
-            throw new RejectedExecutionException("Task queue is full");
+    /**
+     * Called by a periodic task on a worker after it ran.
+     */
+    void reschedule(ScheduledTask<?> task) {
+        if (isShutdown) {
+            task.cancel(false);
+        } else {
+            addTimer(task);
         }
+    }
 
-        return futureTask;
+    /**
+     * Called by a cancelled task so its timer is unlinked from the wheel instead of waiting to fire.
+     */
+    void unschedule(ScheduledTask<?> task) {
+        if (timerThread != null && !isShutdown) {
+            timerCancellations.offer(task);
+        }
     }
 
-    @Override
-    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
-        if (tasks == null) {
-            throw new NullPointerException("Tasks collection cannot be null");
+    private void addTimer(ScheduledTask<?> task) {
+        timerAdditions.offer(task);
+        Thread timer = timerThread;
+        if (timer == null) {
+            timer = startTimer();
         }
+        if (timerIdle) {
+            LockSupport.unpark(timer);
+        }
+        if (isShutdown) {
+            // Raced with shutdown(); the timer thread may already be gone.
+            task.cancel(false);
+        }
+    }
 
-        List<Future<T>> futures = new ArrayList<>();
+    private synchronized Thread startTimer() {
+        if (timerThread == null) {
+            Thread timer = new Thread(this::runTimer, "MyExecService timer thread");
+            timerRunning = true;
+            timerThread = timer;
+            timer.start();
+        }
+        return timerThread;
+    }
 
-        for (Callable<T> task : tasks) {
-            try {
-                Future<T> future = submit(task);
-                futures.add(future);
-            } catch (RejectedExecutionException e) {
-                for (Future<T> future : futures) {
-                    future.cancel(true);
-                }
-                throw e;
+    private void stopTimer() {
+        Thread timer = timerThread;
+        if (timer != null) {
+            LockSupport.unpark(timer);
+        }
+    }
+
+    private long currentTick() {
+        return (System.nanoTime() - timerOrigin) / TIMER_TICK_NANOS;
+    }
+
+    /**
+     * Timer thread loop: the only place the wheel is touched. Due tasks go straight into the task queue.
+     */
+    private void runTimer() {
+        TimerWheel<ScheduledTask<?>> wheel = new TimerWheel<>(currentTick());
+        try {
+            tickUntilShutdown(wheel);
+        } finally {
+            // Delayed and periodic tasks that are not due yet do not outlive shutdown.
+            wheel.clear(pending -> pending.cancel(false));
+            ScheduledTask<?> task;
+            while ((task = timerAdditions.poll()) != null) {
+                task.cancel(false);
             }
+            timerRunning = false;
+            // Workers that stayed for the timer may be blocked in an empty queue by now.
+            wakeUpWorker();
         }
+    }
 
-        for (Future<T> future : futures) {
-            if (!future.isDone()) {
-                try {
-                    future.get();
-                } catch (ExecutionException | CancellationException e){
-                    System.out.println("Task failed with exception: " + e.getCause());
+    private void tickUntilShutdown(TimerWheel<ScheduledTask<?>> wheel) {
+        while (!isShutdown) {
+            ScheduledTask<?> task;
+            while ((task = timerAdditions.poll()) != null) {
+                if (!task.isDone()) {
+                    long deadlineTick = -Math.floorDiv(timerOrigin - task.deadlineNanos(), TIMER_TICK_NANOS);
+                    task.timer = wheel.add(task, deadlineTick);
                 }
             }
+            while ((task = timerCancellations.poll()) != null) {
+                if (task.timer != null) {
+                    wheel.cancel(task.timer);
+                    task.timer = null;
+                }
+            }
+
+            wheel.advanceTo(currentTick(), this::fireTimer);
+
+            if (wheel.isEmpty()) {
+                timerIdle = true;
+                // Re-check after publishing the flag: addTimer() offers first and reads the flag second.
+                if (timerAdditions.isEmpty() && !isShutdown) {
+                    LockSupport.park(this);
+                }
+                timerIdle = false;
+            } else {
+                long nextTickNanos = timerOrigin + (wheel.currentTick() + 1) * TIMER_TICK_NANOS;
+                LockSupport.parkNanos(this, nextTickNanos - System.nanoTime());
+            }
         }
+    }
 
-        return futures;
+    /**
+     * Hands a due task to the workers. Whatever goes wrong stays with that task, so one failing saturation
+     * policy cannot take the timer thread, and every other timer with it, down.
+     */
+    private void fireTimer(ScheduledTask<?> task) {
+        task.timer = null;
+        if (task.isDone()) {
+            return;
+        }
+        try {
+            if (task.runsOnTimerThread()) {
+                task.run();
+            } else if (saturationPolicy != CallerRunsPolicy.INSTANCE) {
+                enqueue(task);
+            } else if (!offer(task)) {
+                // The caller would be this very thread, holding up every other timer; try again next tick.
+                timerAdditions.offer(task);
+            }
+        } catch (RejectedExecutionException e) {
+            task.cancel(false);
+        } catch (Throwable t) {
+            task.cancel(false);
+            Thread current = Thread.currentThread();
+            current.getUncaughtExceptionHandler().uncaughtException(current, t);
+        }
     }
 
     @Override
-    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
-        if (tasks == null) {
-            throw new NullPointerException("Tasks collection cannot be null");
+    void enqueue(Runnable task) {
+        if (stampsTasks) {
+            task = stamp(task);
         }
-
-        long timeoutMillis = unit.toMillis(timeout);
-        long finish = System.currentTimeMillis() + timeoutMillis;
-
-        List<Future<T>> futures = new ArrayList<>();
-
-        for (Callable<T> task : tasks) {
+        if (!taskQueue.offer(task)) {
             try {
-                Future<T> future = submit(task);
-                futures.add(future);
+                saturationPolicy.saturated(task, taskQueue);
             } catch (RejectedExecutionException e) {
-                for (Future<T> future : futures) {
-                    future.cancel(true);
+                if (metrics != null) {
+                    metrics.rejected.increment();
                 }
                 throw e;
             }
         }
-        boolean timedOut = false;
-        for (Future<T> future : futures) {
-            if (!future.isDone()) {
-                long remaining = finish - System.currentTimeMillis();
+        if (metrics != null) {
+            metrics.submitted.increment();
+        }
+        checkHighWatermark();
+    }
 
-                if (remaining <= 0) {
-                    future.cancel(true);
-                    timedOut = true;
-                    break;
-                } else {
-                    try {
-                        future.get(remaining, TimeUnit.MILLISECONDS);
-                    } catch (ExecutionException | CancellationException e) {
-                        System.out.println("Task failed with exception: " + e.getCause());
-                    } catch (TimeoutException e) {
-                        future.cancel(true);
-                    }
+    /**
+     * {@link #enqueue} without the saturation policy.
+     *
+     * @return false if the queue is full
+     */
+    private boolean offer(Runnable task) {
+        if (stampsTasks) {
+            task = stamp(task);
+        }
+        if (!taskQueue.offer(task)) {
+            return false;
+        }
+        if (metrics != null) {
+            metrics.submitted.increment();
+        }
+        checkHighWatermark();
+        return true;
+    }
+
+    /**
+     * Publishes the batch with one {@link BatchQueue#offerAll} when the queue supports it. Tasks that do
+     * not fit go through the {@link SaturationPolicy} one by one, exactly as with {@link #enqueue}.
+     */
+    @Override
+    void enqueueAll(List<? extends Runnable> tasks) {
+        if (!(taskQueue instanceof BatchQueue<Runnable> batchQueue)) {
+            super.enqueueAll(tasks);
+            return;
+        }
+        if (stampsTasks) {
+            List<Runnable> stamped = new ArrayList<>(tasks.size());
+            for (Runnable task : tasks) {
+                stamped.add(stamp(task));
+            }
+            tasks = stamped;
+        }
+        int added = batchQueue.offerAll(tasks);
+        try {
+            for (int i = added; i < tasks.size(); i++) {
+                Runnable task = tasks.get(i);
+                if (!taskQueue.offer(task)) {
+                    saturationPolicy.saturated(task, taskQueue);
                 }
+                added++;
             }
+        } catch (RejectedExecutionException e) {
+            if (metrics != null) {
+                metrics.rejected.increment();
+            }
+            throw e;
+        } finally {
+            if (metrics != null) {
+                metrics.submitted.add(added);
+            }
+            checkHighWatermark();
         }
+    }
 
-        if (timedOut){
-            for (Future<T> future : futures) {
-                future.cancel(true);
-            }
+    /**
+     * Records the enqueue time on our own futures, and wraps plain commands to carry it.
+     */
+    private static Runnable stamp(Runnable task) {
+        long now = System.nanoTime();
+        if (task instanceof ExecTask<?> execTask) {
+            execTask.enqueuedNanos = now;
+            return task;
+        }
+        return new TimedCommand(task, now);
+    }
+
+    private static final class TimedCommand implements Runnable, Prioritized, Discardable {
+        private final Runnable command;
+        private final long enqueuedNanos;
+
+        TimedCommand(Runnable command, long enqueuedNanos) {
+            this.command = command;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        @Override
+        public void run() {
+            command.run();
         }
 
-        return futures;
+        @Override
+        public TaskPriority priority() {
+            return command instanceof Prioritized prioritized ? prioritized.priority() : TaskPriority.NORMAL;
+        }
+
+        @Override
+        public void discard() {
+            Discardable.drop(command);
+        }
     }
 
-    @Override
-    public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
-        if (tasks == null) {
-            throw new NullPointerException("Tasks collection cannot be null");
+    private final class Worker extends Thread {
+        // Read by the supervisor.
+        volatile boolean busy;
+
+        Worker(int index) {
+            super("MyExecService processing thread-" + index);
+        }
+
+        @Override
+        public void run() {
+            process();
+        }
+    }
+
+    private final class MetricsMXBean implements MyExecServiceMXBean {
+
+        @Override
+        public long getSubmittedTasks() {
+            return metrics.submitted.sum();
         }
 
-        List<Future<T>> futures = new ArrayList<>();
+        @Override
+        public long getCompletedTasks() {
+            return metrics.completed.sum();
+        }
 
-        for (Callable<T> task : tasks) {
-            Future<T> future = submit(task);
-            futures.add(future);
+        @Override
+        public long getFailedTasks() {
+            return metrics.failed.sum();
         }
 
-        ExecutionException lastException = null;
-        Set<Future<T>> processed = new HashSet<>();
-        int exceptionCount = 0;
+        @Override
+        public long getRejectedTasks() {
+            return metrics.rejected.sum();
+        }
 
-        try {
-            while (true) {
-                for (Future<T> future : futures) {
-                    if (future.isDone()) {
-                        processed.add(future);
-                        try {
-                            T result = future.get();
-                            cancelRemaining(futures, future);
-                            return result;
-                        } catch (ExecutionException e) {
-                            lastException = e;
-                            exceptionCount++;
-                        } catch (CancellationException e) {
-                            exceptionCount++;
-                        }
-                    }
-                }
+        @Override
+        public long getExpiredTasks() {
+            return metrics.expired.sum();
+        }
 
-                if (processed.size() == tasks.size() && exceptionCount == processed.size()) {
-                    throw new ExecutionException(lastException);
-                }
+        @Override
+        public int getQueueDepth() {
+            return taskQueue.size();
+        }
+
+        @Override
+        public int getLiveWorkers() {
+            return liveWorkers.get();
+        }
+
+        @Override
+        public long getQueueWaitP50Micros() {
+            return TimeUnit.NANOSECONDS.toMicros(metrics.queueWait.snapshot().percentile(0.5));
+        }
+
+        @Override
+        public long getQueueWaitP99Micros() {
+            return TimeUnit.NANOSECONDS.toMicros(metrics.queueWait.snapshot().percentile(0.99));
+        }
+
+        @Override
+        public long getRunTimeP50Micros() {
+            return TimeUnit.NANOSECONDS.toMicros(metrics.runTime.snapshot().percentile(0.5));
+        }
+
+        @Override
+        public long getRunTimeP99Micros() {
+            return TimeUnit.NANOSECONDS.toMicros(metrics.runTime.snapshot().percentile(0.99));
+        }
+
+        @Override
+        public void resetHistograms() {
+            metrics.resetHistograms();
+        }
+    }
+
+    private void checkHighWatermark() {
+        if (watermarkListener != null && !aboveHighWatermark.get()) {
+            int depth = taskQueue.size();
+            if (depth >= highWatermark && aboveHighWatermark.compareAndSet(false, true)) {
+                watermarkListener.onHighWatermark(depth);
             }
-        } finally {
-            cancelRemaining(futures, null);
         }
     }
 
-    @Override
-    public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        if (tasks == null) {
-            throw new NullPointerException("Tasks collection cannot be null");
+    private void checkLowWatermark() {
+        if (watermarkListener != null && aboveHighWatermark.get()) {
+            int depth = taskQueue.size();
+            if (depth <= lowWatermark && aboveHighWatermark.compareAndSet(true, false)) {
+                watermarkListener.onLowWatermark(depth);
+            }
+        }
+    }
+
+    public static final class Builder {
+        private int threads = 1;
+        private int maxThreads = 1;
+        private long keepAliveNanos;
+        private long queueWaitTargetNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        private BlockingQueue<Runnable> taskQueue;
+        private int capacity = Integer.MAX_VALUE;
+        private SaturationPolicy saturationPolicy = SaturationPolicy.abort();
+        private WatermarkListener watermarkListener;
+        private int highWatermark;
+        private int lowWatermark;
+        private int[] laneWeights;
+        private long deadlineSlackNanos = -1;
+        private boolean metrics = false;
+        private IdleStrategy idleStrategy = IdleStrategy.blocking();
+
+        private Builder() {
         }
 
-        long timeoutMillis = unit.toMillis(timeout);
-        long finish = System.currentTimeMillis() + timeoutMillis;
+        public Builder threads(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("Number of threads must be positive");
+            }
+            this.threads = threads;
+            this.maxThreads = threads;
+            return this;
+        }
 
-        List<Future<T>> futures = new ArrayList<>();
+        /**
+         * Lets the number of workers float between {@code min} and {@code max}. A worker is added when the
+         * oldest queued task has waited longer than the {@linkplain #queueWaitTarget queue-wait target} or
+         * every busy worker is blocked; a worker idle for {@code keepAlive} retires while more than
+         * {@code min} remain. Tasks are time-stamped on enqueue even with metrics switched off.
+         */
+        public Builder elasticThreads(int min, int max, long keepAlive, TimeUnit unit) {
+            if (min <= 0 || max < min) {
+                throw new IllegalArgumentException("Thread bounds must satisfy 0 < min <= max");
+            }
+            if (keepAlive <= 0) {
+                throw new IllegalArgumentException("Keep-alive must be positive");
+            }
+            this.threads = min;
+            this.maxThreads = max;
+            this.keepAliveNanos = unit.toNanos(keepAlive);
+            return this;
+        }
 
-        for (Callable<T> task : tasks) {
-            Future<T> future = submit(task);
-            futures.add(future);
+        /**
+         * Queue wait above which an elastic executor adds a worker; also how often it checks. 10 ms by default.
+         */
+        public Builder queueWaitTarget(long target, TimeUnit unit) {
+            if (target <= 0) {
+                throw new IllegalArgumentException("Queue-wait target must be positive");
+            }
+            this.queueWaitTargetNanos = unit.toNanos(target);
+            return this;
         }
 
-        ExecutionException lastException = null;
-        Set<Future<T>> processed = new HashSet<>();
-        int exceptionCount = 0;
+        /**
+         * Uses the given queue instead of a {@link LinkedTaskQueue}; its own capacity applies.
+         */
+        public Builder taskQueue(BlockingQueue<Runnable> taskQueue) {
+            this.taskQueue = Objects.requireNonNull(taskQueue, "Task queue cannot be null");
+            return this;
+        }
 
-        try {
-            while (true) {
-                for (Future<T> future : futures) {
-                    if (future.isDone()) {
-                        processed.add(future);
-                        try {
-                            T result = future.get();
-                            cancelRemaining(futures, future);
-                            return result;
-                        } catch (ExecutionException e) {
-                            lastException = e;
-                            exceptionCount++;
-                        } catch (CancellationException e) {
-                            exceptionCount++;
-                        }
-                    }
-                }
+        /**
+         * Bounds the default task queue, the priority lanes or the deadline queue. Submissions beyond it go to the {@link SaturationPolicy}.
+         */
+        public Builder capacity(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Capacity must be positive");
+            }
+            this.capacity = capacity;
+            return this;
+        }
 
-                if (processed.size() == tasks.size() && exceptionCount == processed.size()) {
-                    throw new ExecutionException(lastException);
-                }
+        public Builder saturationPolicy(SaturationPolicy saturationPolicy) {
+            this.saturationPolicy = Objects.requireNonNull(saturationPolicy, "Saturation policy cannot be null");
+            return this;
+        }
 
-                long remaining = finish - System.currentTimeMillis();
-                if (remaining <= 0) {
-                    throw new TimeoutException();
-                }
+        /**
+         * Reports the queue depth reaching {@code high} once, and then falling back to {@code low} once.
+         */
+        public Builder watermarks(int high, int low, WatermarkListener listener) {
+            if (low < 0 || high <= low) {
+                throw new IllegalArgumentException("Watermarks must satisfy 0 <= low < high");
             }
+            this.highWatermark = high;
+            this.lowWatermark = low;
+            this.watermarkListener = Objects.requireNonNull(listener, "Watermark listener cannot be null");
+            return this;
+        }
 
-        } finally {
-            cancelRemaining(futures, null);
+        /**
+         * Serves tasks from one lane per {@link TaskPriority}, 8 high, 4 normal and 1 low task per round.
+         */
+        public Builder priorityLanes() {
+            return priorityLanes(8, 4, 1);
         }
-    }
 
-    private <T> void cancelRemaining(List<Future<T>> futures, Future<T> exclude) {
-        for (Future<T> f : futures) {
-            if (f != exclude) {
-                f.cancel(true);
+        /**
+         * Serves tasks from one lane per {@link TaskPriority} by weighted round-robin with the given weights.
+         */
+        public Builder priorityLanes(int highWeight, int normalWeight, int lowWeight) {
+            if (highWeight <= 0 || normalWeight <= 0 || lowWeight <= 0) {
+                throw new IllegalArgumentException("Lane weights must be positive");
             }
+            this.laneWeights = new int[]{highWeight, normalWeight, lowWeight};
+            return this;
         }
-    }
 
-    @Override
-    public void execute(Runnable command) {
-        if (command == null) {
-            throw new NullPointerException("Command cannot be null");
+        /**
+         * Serves tasks earliest deadline first, as set by {@link MyExecService#submit(Callable, long, TimeUnit)}
+         * or a timed {@code invokeAll}. A task without a deadline is ordered as if it were due {@code slack}
+         * after it was queued, so it is not starved by a steady stream of deadline tasks.
+         */
+        public Builder earliestDeadlineFirst(long slack, TimeUnit unit) {
+            if (slack < 0) {
+                throw new IllegalArgumentException("Slack cannot be negative");
+            }
+            // Capped so that deadline arithmetic cannot overflow.
+            this.deadlineSlackNanos = Math.min(unit.toNanos(slack), Long.MAX_VALUE >> 2);
+            return this;
         }
 
-        if (isShutdown) {
-            throw new RejectedExecutionException("ExecutorService is shut down");
+        /**
+         * Switches the counters and latency histograms of {@link MyExecService#metrics()} on or off; off by default,
+         * since they wrap every plain command to carry its enqueue time and read the clock twice per task.
+         */
+        public Builder metrics(boolean enabled) {
+            this.metrics = enabled;
+            return this;
+        }
+
+        /**
+         * How idle workers wait for tasks; {@link IdleStrategy#blocking()} by default.
+         */
+        public Builder idleStrategy(IdleStrategy idleStrategy) {
+            this.idleStrategy = Objects.requireNonNull(idleStrategy, "Idle strategy cannot be null");
+            return this;
         }
 
-        if (!taskQueue.offer(command)) {
-            throw new RejectedExecutionException("Task queue is full");
+        public MyExecService build() {
+            return new MyExecService(this).start();
+        }
+
+        private BlockingQueue<Runnable> createTaskQueue() {
+            if (deadlineSlackNanos >= 0) {
+                if (laneWeights != null || taskQueue != null) {
+                    throw new IllegalArgumentException("Deadline ordering replaces the task queue");
+                }
+                return new DeadlineQueue(deadlineSlackNanos, capacity);
+            }
+            if (laneWeights != null) {
+                if (taskQueue != null) {
+                    throw new IllegalArgumentException("Priority lanes replace the task queue");
+                }
+                return new PriorityLaneQueue(laneWeights, capacity);
+            }
+            if (taskQueue == null) {
+                return new LinkedTaskQueue<>(capacity);
+            }
+            if (capacity != Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Capacity applies only to the default task queue");
+            }
+            if (taskQueue instanceof MpscTaskQueue<?> && maxThreads > 1) {
+                throw new IllegalArgumentException("MpscTaskQueue supports a single processing thread");
+            }
+            return taskQueue;
         }
     }
 }
@@ -0,0 +1,32 @@
+package uj.wmii.pwj.exec;
+
+/**
+ * JMX view of {@link MyExecService} metrics, registered with {@link MyExecService#registerMBean(String)}.
+ * Latencies are in microseconds.
+ */
+public interface MyExecServiceMXBean {
+
+    long getSubmittedTasks();
+
+    long getCompletedTasks();
+
+    long getFailedTasks();
+
+    long getRejectedTasks();
+
+    long getExpiredTasks();
+
+    int getQueueDepth();
+
+    int getLiveWorkers();
+
+    long getQueueWaitP50Micros();
+
+    long getQueueWaitP99Micros();
+
+    long getRunTimeP50Micros();
+
+    long getRunTimeP99Micros();
+
+    void resetHistograms();
+}
@@ -0,0 +1,196 @@
+package uj.wmii.pwj.exec;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reusable future of {@link RingBufferExecService}. Instances come from a pool owned by the executor and
+ * go back to it through {@link #recycle()} once the result has been read, so steady-state submission
+ * allocates nothing. A recycled future must not be touched again by its previous user.
+ * <p>
+ * Simpler than {@link java.util.concurrent.FutureTask} to stay allocation-free: a single thread may wait
+ * in {@code get}, and {@link #cancel(boolean)} only succeeds before the task starts - it never interrupts.
+ */
+public final class PooledFuture<T> implements Future<T>, Runnable {
+
+    private static final int SPIN_TRIES = 64;
+
+    private static final int FREE = 0;
+    private static final int PENDING = 1;
+    private static final int RUNNING = 2;
+    private static final int SUCCEEDED = 3;
+    private static final int FAILED = 4;
+    private static final int CANCELLED = 5;
+
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(PooledFuture.class, "state", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final RingBuffer<PooledFuture<?>> pool;
+    private volatile int state = FREE;
+    private volatile Thread waiter;
+    private Callable<T> callable;
+    private Completion<? super T> completion;
+    private T result;
+    private Throwable failure;
+
+    PooledFuture(RingBuffer<PooledFuture<?>> pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Arms a free future for the next task; the volatile state write publishes the plain fields.
+     */
+    void prepare(Callable<T> callable, Completion<? super T> completion) {
+        this.callable = callable;
+        this.completion = completion;
+        this.state = PENDING;
+    }
+
+    @Override
+    public void run() {
+        if (!STATE.compareAndSet(this, PENDING, RUNNING)) {
+            return;
+        }
+        Callable<T> task = callable;
+        Completion<? super T> callback = completion;
+        callable = null;
+        // Once the state is final, the owner may recycle this future, so no field is written after it.
+        try {
+            result = task.call();
+            state = SUCCEEDED;
+        } catch (Throwable t) {
+            failure = t;
+            state = FAILED;
+        }
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+        if (callback != null) {
+            try {
+                callback.complete(result, failure);
+            } finally {
+                // Nobody else holds a callback-style future, so the worker hands it back.
+                recycle();
+            }
+        }
+    }
+
+    /**
+     * Returns this future to its pool. Call it once, after the result has been read.
+     *
+     * @throws IllegalStateException if the task has not completed yet or the future is already free
+     */
+    public void recycle() {
+        int s = state;
+        if (s == FREE || s == PENDING || s == RUNNING) {
+            throw new IllegalStateException("Only a completed future can be recycled");
+        }
+        if (s == CANCELLED) {
+            // It may still sit in the task ring, so it cannot be handed out again; the GC takes it instead.
+            return;
+        }
+        result = null;
+        failure = null;
+        completion = null;
+        waiter = null;
+        state = FREE;
+        pool.offer(this);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+            return false;
+        }
+        callable = null;
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return state > RUNNING;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        return report(awaitDone(false, 0));
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        int s = awaitDone(true, unit.toNanos(timeout));
+        if (s <= RUNNING) {
+            throw new TimeoutException();
+        }
+        return report(s);
+    }
+
+    private int awaitDone(boolean timed, long nanos) throws InterruptedException {
+        long deadline = timed ? System.nanoTime() + nanos : 0;
+        for (int i = 0; i < SPIN_TRIES; i++) {
+            int s = state;
+            if (s > RUNNING) {
+                return s;
+            }
+            Thread.onSpinWait();
+        }
+        waiter = Thread.currentThread();
+        try {
+            while (true) {
+                // Re-read after publishing the waiter: run() writes the state first and reads the waiter second.
+                int s = state;
+                if (s > RUNNING) {
+                    return s;
+                }
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return s;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+    }
+
+    private T report(int s) throws ExecutionException {
+        if (s == SUCCEEDED) {
+            return result;
+        }
+        if (s == FAILED) {
+            throw new ExecutionException(failure);
+        }
+        throw new CancellationException();
+    }
+}
@@ -0,0 +1,10 @@
+package uj.wmii.pwj.exec;
+
+/**
+ * Implemented by tasks that carry their own {@link TaskPriority}, so plain {@code execute} and
+ * {@code submit} calls land in the right lane. Tasks that do not implement it are {@link TaskPriority#NORMAL}.
+ */
+public interface Prioritized {
+
+    TaskPriority priority();
+}
@@ -0,0 +1,123 @@
+package uj.wmii.pwj.exec;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Task queue with one FIFO lane per {@link TaskPriority}, served by weighted round-robin: a lane may
+ * hand out up to its weight in tasks before the next non-empty lane gets its turn. Every lane has a
+ * positive weight, so low-priority work keeps moving however busy the higher lanes are.
+ * <p>
+ * The time each task spent in its lane is recorded in a per-lane {@link LatencyHistogram}.
+ */
+class PriorityLaneQueue extends AbstractTaskQueue<Runnable> {
+
+    private static final TaskPriority[] LANES = TaskPriority.values();
+
+    private record Entry(Runnable task, long enqueuedNanos) {
+    }
+
+    private final int[] weights;
+    private final List<ArrayDeque<Entry>> lanes = new ArrayList<>();
+    private final LatencyHistogram[] waitTimes = new LatencyHistogram[LANES.length];
+    private int currentLane;
+    private int servedInTurn;
+
+    /**
+     * @param weights tasks served per turn, indexed by {@link TaskPriority#ordinal()}
+     */
+    PriorityLaneQueue(int[] weights, int capacity) {
+        super(capacity, false);
+        if (weights.length != LANES.length) {
+            throw new IllegalArgumentException("Expected one weight per priority");
+        }
+        for (int weight : weights) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Lane weights must be positive");
+            }
+        }
+        this.weights = weights.clone();
+        for (int i = 0; i < LANES.length; i++) {
+            lanes.add(new ArrayDeque<>());
+            waitTimes[i] = new LatencyHistogram();
+        }
+    }
+
+    LatencyHistogram waitTime(TaskPriority priority) {
+        return waitTimes[priority.ordinal()];
+    }
+
+    private static TaskPriority priorityOf(Runnable task) {
+        return task instanceof Prioritized prioritized ? prioritized.priority() : TaskPriority.NORMAL;
+    }
+
+    @Override
+    void insert(Runnable task) {
+        insert(task, System.nanoTime());
+    }
+
+    @Override
+    void insertAll(List<? extends Runnable> tasks, int n) {
+        long now = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            insert(tasks.get(i), now);
+        }
+    }
+
+    private void insert(Runnable task, long nowNanos) {
+        lanes.get(priorityOf(task).ordinal()).addLast(new Entry(task, nowNanos));
+    }
+
+    @Override
+    Runnable extract() {
+        ArrayDeque<Entry> lane = lanes.get(currentLane);
+        if (lane.isEmpty()) {
+            // The lane ran dry: a new round starts from the highest non-empty lane.
+            currentLane = nextNonEmptyLane(LANES.length - 1);
+            servedInTurn = 0;
+            lane = lanes.get(currentLane);
+        } else if (servedInTurn >= weights[currentLane]) {
+            // Turn used up: pass it on even if higher lanes are busy, which is what prevents starvation.
+            currentLane = nextNonEmptyLane(currentLane);
+            servedInTurn = 0;
+            lane = lanes.get(currentLane);
+        }
+        Entry entry = lane.pollFirst();
+        servedInTurn++;
+        waitTimes[currentLane].record(System.nanoTime() - entry.enqueuedNanos());
+        return entry.task();
+    }
+
+    private int nextNonEmptyLane(int after) {
+        int lane = after;
+        do {
+            lane = (lane + 1) % LANES.length;
+        } while (lanes.get(lane).isEmpty());
+        return lane;
+    }
+
+    @Override
+    Runnable first() {
+        for (ArrayDeque<Entry> lane : lanes) {
+            if (!lane.isEmpty()) {
+                return lane.peekFirst().task();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Highest lane first.
+     */
+    @Override
+    List<Runnable> snapshot() {
+        List<Runnable> tasks = new ArrayList<>(size());
+        for (ArrayDeque<Entry> lane : lanes) {
+            for (Entry entry : lane) {
+                tasks.add(entry.task());
+            }
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,112 @@
+package uj.wmii.pwj.exec;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Bounded multi-producer / multi-consumer ring of preallocated slots, after Dmitry Vyukov's bounded
+ * MPMC queue. Every slot has a sequence number that says whose turn it is: a producer may fill slot
+ * {@code i} for position {@code p} once its sequence is {@code p}, a consumer may empty it once it is
+ * {@code p + 1}. Claiming a position is one CAS on the shared cursor; nothing is allocated per element.
+ * <p>
+ * Non-blocking: {@link #offer} fails when the ring is full and {@link #poll} returns {@code null} when it
+ * is empty; callers decide how to wait.
+ */
+final class RingBuffer<E> {
+
+    private static final VarHandle SEQUENCES = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(RingBuffer.class, "head", long.class);
+            TAIL = lookup.findVarHandle(RingBuffer.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int mask;
+    private final long[] sequences;
+    private final Object[] items;
+    // Next position to consume and to produce.
+    private volatile long head;
+    private volatile long tail;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    RingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.sequences = new long[size];
+        this.items = new Object[size];
+        for (int i = 0; i < size; i++) {
+            sequences[i] = i;
+        }
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    boolean offer(E e) {
+        long pos = tail;
+        while (true) {
+            int index = (int) pos & mask;
+            long turn = (long) SEQUENCES.getAcquire(sequences, index) - pos;
+            if (turn == 0) {
+                if (TAIL.compareAndSet(this, pos, pos + 1)) {
+                    items[index] = e;
+                    SEQUENCES.setRelease(sequences, index, pos + 1);
+                    return true;
+                }
+            } else if (turn < 0) {
+                // The slot still holds the element from one lap ago.
+                return false;
+            }
+            pos = tail;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long pos = head;
+        while (true) {
+            int index = (int) pos & mask;
+            long turn = (long) SEQUENCES.getAcquire(sequences, index) - (pos + 1);
+            if (turn == 0) {
+                if (HEAD.compareAndSet(this, pos, pos + 1)) {
+                    E e = (E) items[index];
+                    items[index] = null;
+                    SEQUENCES.setRelease(sequences, index, pos + mask + 1);
+                    return e;
+                }
+            } else if (turn < 0) {
+                return null;
+            }
+            pos = head;
+        }
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Approximate under concurrent use; counts claimed positions, even if not yet filled.
+     */
+    int size() {
+        long h = head;
+        long t = tail;
+        return (int) Math.max(0, Math.min(t - h, capacity()));
+    }
+}
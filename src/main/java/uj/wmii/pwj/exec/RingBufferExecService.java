@@ -0,0 +1,237 @@
+package uj.wmii.pwj.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Low-allocation counterpart of {@link MyExecService}, in the style of the LMAX Disruptor.
+ * <p>
+ * Tasks wait in a preallocated {@link RingBuffer} instead of a linked queue, so {@link #execute(Runnable)}
+ * allocates nothing. Results come back through {@link PooledFuture}s taken from a pool of the same size:
+ * {@link #submitPooled(Callable)} returns one that the caller recycles after reading it, and
+ * {@link #execute(Callable, Completion)} passes the result to a callback and recycles the future itself.
+ * The regular {@code submit} methods still work, but allocate a future per task as usual.
+ * <p>
+ * A full ring applies back-pressure: an outside producer waits for a free slot, while a worker of this
+ * executor runs the task itself rather than wait for its own peers.
+ */
+public class RingBufferExecService extends AbstractExecService {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int SPIN_TRIES = 256;
+
+    private final RingBuffer<Runnable> ring;
+    private final RingBuffer<PooledFuture<?>> pool;
+    private final List<Worker> workers;
+    private final AtomicInteger liveWorkers;
+    private volatile boolean isShutdown = false;
+    private volatile boolean isStopped = false;
+    private volatile boolean isTerminated = false;
+
+    /**
+     * @param capacity size of the task ring and the future pool, rounded up to a power of two
+     */
+    public RingBufferExecService(int nThreads, int capacity) {
+        if (nThreads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.ring = new RingBuffer<>(capacity);
+        this.pool = new RingBuffer<>(capacity);
+        for (int i = 0; i < pool.capacity(); i++) {
+            pool.offer(new PooledFuture<>(pool));
+        }
+        this.liveWorkers = new AtomicInteger(nThreads);
+
+        List<Worker> threads = new ArrayList<>(nThreads);
+        for (int i = 0; i < nThreads; i++) {
+            threads.add(new Worker(i));
+        }
+        this.workers = List.copyOf(threads);
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    static RingBufferExecService newInstance(int nThreads) {
+        return new RingBufferExecService(nThreads, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Like {@link #submit(Callable)}, but the returned future comes from the pool; hand it back with
+     * {@link PooledFuture#recycle()} once its result has been read.
+     */
+    public <T> PooledFuture<T> submitPooled(Callable<T> task) {
+        if (task == null) {
+            throw new NullPointerException("Task cannot be null");
+        }
+        return submitPooled(task, null);
+    }
+
+    /**
+     * Runs the task and hands its result or exception to the callback on the worker. Nothing is allocated
+     * as long as the pool has a free future and the caller reuses its task and callback objects.
+     */
+    public <T> void execute(Callable<T> task, Completion<? super T> completion) {
+        if (task == null || completion == null) {
+            throw new NullPointerException("Task and completion cannot be null");
+        }
+        submitPooled(task, completion);
+    }
+
+    private <T> PooledFuture<T> submitPooled(Callable<T> task, Completion<? super T> completion) {
+        if (rejectsNewTasks()) {
+            throw new RejectedExecutionException("ExecutorService is shut down");
+        }
+        @SuppressWarnings("unchecked")
+        PooledFuture<T> future = (PooledFuture<T>) pool.poll();
+        if (future == null) {
+            // More futures in flight than the pool holds; the extra one joins the pool when recycled.
+            future = new PooledFuture<>(pool);
+        }
+        future.prepare(task, completion);
+        try {
+            enqueue(future);
+        } catch (RejectedExecutionException e) {
+            future.cancel(false);
+            throw e;
+        }
+        return future;
+    }
+
+    @Override
+    void enqueue(Runnable task) {
+        for (int i = 0; !ring.offer(task); i++) {
+            Worker self = currentWorker();
+            if (self != null) {
+                self.runTask(task);
+                return;
+            }
+            if (isShutdown) {
+                throw new RejectedExecutionException("ExecutorService is shut down");
+            }
+            if (i < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        signalWork();
+    }
+
+    private Worker currentWorker() {
+        if (Thread.currentThread() instanceof Worker worker && worker.owner() == this) {
+            return worker;
+        }
+        return null;
+    }
+
+    private void signalWork() {
+        for (Worker worker : workers) {
+            if (worker.parked) {
+                LockSupport.unpark(worker);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        isShutdown = true;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        isShutdown = true;
+        isStopped = true;
+
+        List<Runnable> notExecutedTasks = new ArrayList<>();
+        Runnable task;
+        while ((task = ring.poll()) != null) {
+            notExecutedTasks.add(task);
+        }
+        for (Worker worker : workers) {
+            worker.interrupt();
+        }
+
+        return notExecutedTasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return isShutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return isTerminated;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Worker worker : workers) {
+            TimeUnit.NANOSECONDS.timedJoin(worker, deadline - System.nanoTime());
+        }
+        return isTerminated;
+    }
+
+    private final class Worker extends Thread {
+        private volatile boolean parked = false;
+
+        Worker(int index) {
+            super("RingBufferExecService worker-" + index);
+        }
+
+        RingBufferExecService owner() {
+            return RingBufferExecService.this;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int idle = 0;
+                while (!isStopped) {
+                    Runnable task = ring.poll();
+                    if (task != null) {
+                        idle = 0;
+                        runTask(task);
+                    } else if (isShutdown) {
+                        break;
+                    } else if (idle++ < SPIN_TRIES) {
+                        Thread.onSpinWait();
+                    } else {
+                        awaitWork();
+                    }
+                }
+            } finally {
+                if (liveWorkers.decrementAndGet() == 0) {
+                    isTerminated = true;
+                }
+            }
+        }
+
+        private void awaitWork() {
+            parked = true;
+            // Re-check after publishing the flag: enqueue() offers first and reads the flag second.
+            if (ring.isEmpty() && !isShutdown) {
+                LockSupport.park(this);
+            }
+            parked = false;
+            Thread.interrupted();
+        }
+
+        void runTask(Runnable task) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                getUncaughtExceptionHandler().uncaughtException(this, t);
+            }
+        }
+    }
+}
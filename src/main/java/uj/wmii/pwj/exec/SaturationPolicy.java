@@ -0,0 +1,70 @@
+package uj.wmii.pwj.exec;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides what happens to a task that does not fit into a full task queue of {@link MyExecService}.
+ */
+@FunctionalInterface
+public interface SaturationPolicy {
+
+    /**
+     * Called on the submitting thread after {@code queue.offer(task)} failed.
+     *
+     * @throws RejectedExecutionException if the task is not accepted in any way
+     */
+    void saturated(Runnable task, BlockingQueue<Runnable> queue);
+
+    /**
+     * Rejects the task - the default.
+     */
+    static SaturationPolicy abort() {
+        return (task, queue) -> {
+            throw new RejectedExecutionException("Task queue is full");
+        };
+    }
+
+    /**
+     * Runs the task on the submitting thread, which also slows that producer down. Delayed and periodic tasks
+     * are the exception: they are retried on the next timer tick, so the timer thread never runs a task.
+     */
+    static SaturationPolicy callerRuns() {
+        return CallerRunsPolicy.INSTANCE;
+    }
+
+    /**
+     * Drops the oldest queued task to make room. A dropped {@link Future} is cancelled, so nobody waits on it forever.
+     * A dropped {@link KeyedSerialExecutor} mailbox gives up every task queued for its key the same way, and
+     * the key starts afresh with its next task.
+     */
+    static SaturationPolicy discardOldest() {
+        return (task, queue) -> {
+            while (!queue.offer(task)) {
+                Runnable oldest = queue.poll();
+                if (oldest != null) {
+                    Discardable.drop(oldest);
+                }
+            }
+        };
+    }
+
+    /**
+     * Blocks the submitting thread until there is room in the queue, but no longer than the given timeout.
+     */
+    static SaturationPolicy blockWithTimeout(long timeout, TimeUnit unit) {
+        long timeoutNanos = unit.toNanos(timeout);
+        return (task, queue) -> {
+            try {
+                if (!queue.offer(task, timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    throw new RejectedExecutionException("Task queue is full");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for space in the task queue", e);
+            }
+        };
+    }
+}
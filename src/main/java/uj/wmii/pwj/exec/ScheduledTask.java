@@ -0,0 +1,96 @@
+package uj.wmii.pwj.exec;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delayed or periodic task of {@link MyExecService}. It waits in the timer wheel until due, then runs
+ * on a regular worker; a periodic task hands itself back to the scheduler after each successful run.
+ * A task marked to run on the timer thread skips the workers and runs right where it fired.
+ */
+class ScheduledTask<V> extends ExecTask<V> implements RunnableScheduledFuture<V> {
+
+    private final MyExecService owner;
+    /**
+     * Zero for one-shot tasks, positive for fixed-rate and negative for fixed-delay tasks.
+     */
+    private final long periodNanos;
+    private final boolean onTimerThread;
+    private volatile long deadlineNanos;
+    // Only touched by the timer thread.
+    TimerWheel.Timer<ScheduledTask<?>> timer;
+
+    ScheduledTask(MyExecService owner, Callable<V> callable, long deadlineNanos) {
+        super(callable);
+        this.owner = owner;
+        this.deadlineNanos = deadlineNanos;
+        this.periodNanos = 0;
+        this.onTimerThread = false;
+    }
+
+    ScheduledTask(MyExecService owner, Runnable runnable, long deadlineNanos, long periodNanos) {
+        this(owner, runnable, deadlineNanos, periodNanos, false);
+    }
+
+    /**
+     * @param onTimerThread whether the task runs on the timer thread when due instead of on a worker
+     */
+    ScheduledTask(MyExecService owner, Runnable runnable, long deadlineNanos, long periodNanos,
+            boolean onTimerThread) {
+        super(runnable, null);
+        this.owner = owner;
+        this.deadlineNanos = deadlineNanos;
+        this.periodNanos = periodNanos;
+        this.onTimerThread = onTimerThread;
+    }
+
+    long deadlineNanos() {
+        return deadlineNanos;
+    }
+
+    boolean runsOnTimerThread() {
+        return onTimerThread;
+    }
+
+    @Override
+    public boolean isPeriodic() {
+        return periodNanos != 0;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        if (other == this) {
+            return 0;
+        }
+        if (other instanceof ScheduledTask<?> task) {
+            return Long.compare(deadlineNanos - task.deadlineNanos, 0);
+        }
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void run() {
+        if (!isPeriodic()) {
+            super.run();
+        } else if (runAndReset()) {
+            deadlineNanos = periodNanos > 0 ? deadlineNanos + periodNanos : System.nanoTime() - periodNanos;
+            owner.reschedule(this);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            owner.unschedule(this);
+        }
+        return cancelled;
+    }
+}
@@ -0,0 +1,11 @@
+package uj.wmii.pwj.exec;
+
+/**
+ * Priority class of a task. It only matters when {@link MyExecService} is built with priority lanes;
+ * otherwise every task is served in FIFO order.
+ */
+public enum TaskPriority {
+    HIGH,
+    NORMAL,
+    LOW
+}
@@ -0,0 +1,279 @@
+package uj.wmii.pwj.exec;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Structured fork/join over a {@link MyExecService}: subtasks forked in a scope never outlive it.
+ * <p>
+ * The thread that opened the scope forks subtasks, waits for them in {@link #join()} and finally
+ * {@link #close() closes} the scope, best in a try-with-resources block. The first subtask to fail, or the
+ * deadline passing, cancels the whole subtree: every unfinished subtask is cancelled, running ones are
+ * interrupted, and so are the subtasks of every scope opened inside them. The deadline is armed on the
+ * executor's timer thread at the first fork, so it holds whether or not the owner is in {@code join}.
+ * {@code close} then waits until no subtask is still running, so nothing keeps burning workers after the
+ * scope is gone.
+ * <p>
+ * Joining from a worker occupies that worker; fork deep trees onto an executor with enough threads, or one
+ * built with {@link MyExecService.Builder#elasticThreads elastic threads}, which adds workers when all of
+ * them wait.
+ */
+public final class TaskScope implements AutoCloseable {
+
+    private static final ThreadLocal<TaskScope> CURRENT = new ThreadLocal<>();
+
+    private final MyExecService executor;
+    private final Thread owner;
+    private final TaskScope parent;
+    private final long deadlineNanos;
+    private final Set<ScopedTask<?>> subtasks = ConcurrentHashMap.newKeySet();
+    private final Set<TaskScope> children = ConcurrentHashMap.newKeySet();
+    // Guarded by this.
+    private int unfinished;
+    private int running;
+    private Throwable failure;
+    private boolean deadlineArmed = false;
+    private volatile Future<?> deadlineTimer;
+    private volatile boolean deadlinePassed = false;
+    private volatile boolean cancelled = false;
+    private volatile boolean closed = false;
+
+    /**
+     * @param deadlineNanos {@link System#nanoTime()} at which the subtree is cancelled, or {@link Long#MAX_VALUE}
+     */
+    TaskScope(MyExecService executor, long deadlineNanos) {
+        this.executor = executor;
+        this.owner = Thread.currentThread();
+        this.parent = CURRENT.get();
+        if (parent != null) {
+            this.deadlineNanos = earlier(parent.deadlineNanos, deadlineNanos);
+            parent.children.add(this);
+            if (parent.cancelled) {
+                cancelled = true;
+            }
+        } else {
+            this.deadlineNanos = deadlineNanos;
+        }
+        CURRENT.set(this);
+    }
+
+    private static long earlier(long deadline, long other) {
+        if (deadline == Long.MAX_VALUE) {
+            return other;
+        }
+        if (other == Long.MAX_VALUE) {
+            return deadline;
+        }
+        // nanoTime values are only comparable by their difference.
+        return deadline - other < 0 ? deadline : other;
+    }
+
+    /**
+     * Starts the task on the executor as part of this scope. After the scope was cancelled the task does
+     * not run, and the returned future is already cancelled.
+     *
+     * @throws IllegalStateException if the scope is closed
+     */
+    public <T> Future<T> fork(Callable<T> task) {
+        if (task == null) {
+            throw new NullPointerException("Task cannot be null");
+        }
+        if (closed) {
+            throw new IllegalStateException("Scope is closed");
+        }
+        ScopedTask<T> subtask = new ScopedTask<>(task);
+        boolean armDeadline;
+        synchronized (this) {
+            unfinished++;
+            armDeadline = !deadlineArmed && deadlineNanos != Long.MAX_VALUE;
+            deadlineArmed = true;
+        }
+        if (armDeadline) {
+            deadlineTimer = executor.scheduleOnTimerThread(this::expire, deadlineNanos);
+        }
+        subtasks.add(subtask);
+        if (cancelled) {
+            subtask.cancel(false);
+            return subtask;
+        }
+        try {
+            executor.execute(subtask);
+        } catch (RuntimeException e) {
+            subtask.cancel(false);
+            throw e;
+        }
+        return subtask;
+    }
+
+    /**
+     * Waits until every forked subtask has completed.
+     *
+     * @throws ExecutionException   if a subtask failed; the rest of the subtree has been cancelled
+     * @throws TimeoutException     if the deadline passed first; the subtree has been cancelled
+     * @throws InterruptedException if interrupted while waiting; the subtree keeps running until {@link #close()}
+     */
+    public void join() throws InterruptedException, ExecutionException, TimeoutException {
+        checkOwner();
+        Throwable failed;
+        boolean timedOut = false;
+        synchronized (this) {
+            while (unfinished > 0 && failure == null && !timedOut && !deadlinePassed) {
+                if (deadlineNanos == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining > 0) {
+                        wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+                    } else {
+                        timedOut = true;
+                    }
+                }
+            }
+            failed = failure;
+        }
+        if (failed != null) {
+            // The failing subtask cancels the subtree too, but may not have got to it yet.
+            cancel();
+            throw new ExecutionException(failed);
+        }
+        if (timedOut || deadlinePassed) {
+            // Outside the monitor: cancelling runs done() of every subtask, which takes it again.
+            cancel();
+            throw new TimeoutException("Scope deadline passed");
+        }
+    }
+
+    /**
+     * Run by the timer when the deadline passes. Flagged before cancelling, so that a join woken by the
+     * cancelled subtasks reports the timeout rather than a normal completion; a scope that finished in time
+     * is left alone.
+     */
+    private void expire() {
+        synchronized (this) {
+            if (unfinished == 0) {
+                return;
+            }
+            deadlinePassed = true;
+        }
+        cancel();
+    }
+
+    /**
+     * Cancels the subtree: unfinished subtasks here and in nested scopes, interrupting running ones.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (ScopedTask<?> subtask : subtasks) {
+            subtask.cancel(true);
+        }
+        for (TaskScope child : children) {
+            child.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels whatever is still unfinished and waits until no subtask of this scope is running.
+     */
+    @Override
+    public void close() {
+        checkOwner();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cancel();
+        boolean interrupted = false;
+        synchronized (this) {
+            while (running > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        // No subtask is left to fork, so the timer read here is the last one armed.
+        Future<?> timer = deadlineTimer;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        if (parent != null) {
+            parent.children.remove(this);
+            CURRENT.set(parent);
+        } else {
+            CURRENT.remove();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkOwner() {
+        if (Thread.currentThread() != owner) {
+            throw new WrongThreadException("Only the thread that opened the scope may join or close it");
+        }
+    }
+
+    private void subtaskDone(ScopedTask<?> subtask) {
+        boolean failed = subtask.state() == Future.State.FAILED;
+        synchronized (this) {
+            unfinished--;
+            if (failed && failure == null) {
+                failure = subtask.exceptionNow();
+            }
+            notifyAll();
+        }
+        subtasks.remove(subtask);
+        if (failed) {
+            cancel();
+        }
+    }
+
+    private synchronized void runnerChanged(int delta) {
+        running += delta;
+        if (running == 0) {
+            notifyAll();
+        }
+    }
+
+    private final class ScopedTask<T> extends ExecTask<T> {
+
+        ScopedTask(Callable<T> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void run() {
+            if (isDone()) {
+                return;
+            }
+            if (cancelled) {
+                // Taken from the queue between cancel() flagging the scope and reaching this subtask.
+                cancel(false);
+                return;
+            }
+            runnerChanged(1);
+            TaskScope previous = CURRENT.get();
+            CURRENT.set(TaskScope.this);
+            try {
+                super.run();
+            } finally {
+                CURRENT.set(previous);
+                runnerChanged(-1);
+            }
+        }
+
+        @Override
+        protected void done() {
+            subtaskDone(this);
+        }
+    }
+}
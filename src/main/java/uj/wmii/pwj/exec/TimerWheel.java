@@ -0,0 +1,173 @@
+package uj.wmii.pwj.exec;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical hashed timer wheel: {@value #LEVELS} levels of {@value #SLOTS} slots, where a slot on
+ * level {@code n} spans {@code 64^n} ticks. Adding and cancelling a timer is O(1) - it is linked into
+ * or out of one slot list - and a timer is only touched again when its slot on a coarser level is
+ * cascaded down, at most once per level.
+ * <p>
+ * Not thread-safe; {@link MyExecService} confines it to its timer thread.
+ */
+final class TimerWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    static final class Timer<T> {
+        final T payload;
+        long deadlineTick;
+        Timer<T> prev;
+        Timer<T> next;
+        Slot<T> slot;
+
+        Timer(T payload, long deadlineTick) {
+            this.payload = payload;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    private static final class Slot<T> {
+        Timer<T> head;
+    }
+
+    private final Slot<T>[][] wheel;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long startTick) {
+        this.currentTick = startTick;
+        this.wheel = (Slot<T>[][]) new Slot<?>[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int i = 0; i < SLOTS; i++) {
+                wheel[level][i] = new Slot<>();
+            }
+        }
+    }
+
+    long currentTick() {
+        return currentTick;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a timer; a deadline that has already passed fires on the next tick.
+     */
+    Timer<T> add(T payload, long deadlineTick) {
+        Timer<T> timer = new Timer<>(payload, deadlineTick);
+        insert(timer, currentTick + 1);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Removes a timer that has not fired yet; does nothing otherwise.
+     */
+    void cancel(Timer<T> timer) {
+        if (timer.slot != null) {
+            unlink(timer);
+            size--;
+        }
+    }
+
+    /**
+     * Moves the wheel forward to {@code tick}, handing every timer that became due to {@code expired}.
+     */
+    void advanceTo(long tick, Consumer<T> expired) {
+        while (currentTick < tick) {
+            currentTick++;
+            cascade(1);
+            Slot<T> slot = wheel[0][(int) (currentTick & SLOT_MASK)];
+            Timer<T> timer;
+            while ((timer = slot.head) != null) {
+                unlink(timer);
+                size--;
+                expired.accept(timer.payload);
+            }
+        }
+    }
+
+    /**
+     * Drains every pending timer, e.g. when the scheduler stops.
+     */
+    void clear(Consumer<T> removed) {
+        for (Slot<T>[] level : wheel) {
+            for (Slot<T> slot : level) {
+                Timer<T> timer;
+                while ((timer = slot.head) != null) {
+                    unlink(timer);
+                    removed.accept(timer.payload);
+                }
+            }
+        }
+        size = 0;
+    }
+
+    private void cascade(int level) {
+        if (level >= LEVELS || (currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+            return;
+        }
+        // Coarser levels go first, so their timers can land in the slot being emptied here.
+        cascade(level + 1);
+        Slot<T> slot = wheel[level][(int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK)];
+        Timer<T> timer = slot.head;
+        slot.head = null;
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            timer.prev = null;
+            timer.next = null;
+            timer.slot = null;
+            // The current tick's slot is expired right after cascading, so it may take the timer.
+            insert(timer, currentTick);
+            timer = next;
+        }
+    }
+
+    private void insert(Timer<T> timer, long earliestTick) {
+        long deadline = Math.max(timer.deadlineTick, earliestTick);
+        long delta = deadline - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        if (delta >= MAX_SPAN) {
+            // Beyond the wheel: park it in the farthest top-level slot and re-insert when it cascades.
+            deadline = currentTick + MAX_SPAN - 1;
+        }
+        Slot<T> slot = wheel[level][(int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK)];
+        timer.slot = slot;
+        timer.prev = null;
+        timer.next = slot.head;
+        if (slot.head != null) {
+            slot.head.prev = timer;
+        }
+        slot.head = timer;
+    }
+
+    private void unlink(Timer<T> timer) {
+        Slot<T> slot = timer.slot;
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            slot.head = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+        timer.slot = null;
+    }
+}
@@ -0,0 +1,14 @@
+package uj.wmii.pwj.exec;
+
+/**
+ * Gets told when the task queue of {@link MyExecService} fills up past the high watermark and when it
+ * drains back down to the low watermark, so producers can back off before submissions get rejected.
+ * <p>
+ * Callbacks run on the submitting thread (high) or on a worker (low) and must not block.
+ */
+public interface WatermarkListener {
+
+    void onHighWatermark(int queueDepth);
+
+    void onLowWatermark(int queueDepth);
+}
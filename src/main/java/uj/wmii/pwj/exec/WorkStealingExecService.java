@@ -0,0 +1,311 @@
+package uj.wmii.pwj.exec;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Work-stealing counterpart of {@link MyExecService}.
+ * <p>
+ * Every worker owns a deque. Tasks submitted from a worker of this executor are pushed to the head of
+ * that worker's deque and popped from the head again (LIFO, so freshly split work stays hot in cache),
+ * while tasks submitted from other threads go to a shared submission queue. A worker that runs out of
+ * local work takes from the submission queue and then steals from the tail of the other deques.
+ * <p>
+ * Fan-in should go through {@link #join(Future)}: on a worker thread it keeps running pending tasks
+ * instead of blocking, so recursive splitting does not deadlock once every worker waits for a child.
+ */
+public class WorkStealingExecService extends AbstractExecService {
+    /**
+     * Empty rounds a joining worker spins through before it parks.
+     */
+    private static final int JOIN_SPINS = 64;
+    /**
+     * Longest park of a joining worker, in case the awaited future is completed outside this executor.
+     */
+    private static final long JOIN_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Queue<Runnable> submissionQueue = new ConcurrentLinkedQueue<>();
+    private final List<Worker> workers;
+    private final AtomicInteger liveWorkers;
+    private final AtomicInteger parkedJoiners = new AtomicInteger();
+    private volatile boolean isShutdown = false;
+    private volatile boolean isStopped = false;
+    private volatile boolean isTerminated = false;
+
+    public WorkStealingExecService(int nThreads) {
+        if (nThreads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.liveWorkers = new AtomicInteger(nThreads);
+
+        List<Worker> threads = new ArrayList<>(nThreads);
+        for (int i = 0; i < nThreads; i++) {
+            threads.add(new Worker(i));
+        }
+        this.workers = List.copyOf(threads);
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    static WorkStealingExecService newInstance(int nThreads) {
+        return new WorkStealingExecService(nThreads);
+    }
+
+    /**
+     * Waits for the given future. On a worker of this executor the wait is spent running other pending
+     * tasks, starting with the calling worker's own deque where the awaited child most likely still sits.
+     * With nothing left to run, the worker spins briefly and then parks until a task finishes or new work
+     * arrives.
+     */
+    public <T> T join(Future<T> future) throws InterruptedException, ExecutionException {
+        Worker self = currentWorker();
+        if (self == null) {
+            return future.get();
+        }
+        int spins = 0;
+        while (!future.isDone()) {
+            if (isStopped) {
+                // shutdownNow() drained the queues, so the awaited task may never run.
+                future.cancel(true);
+                break;
+            }
+            Runnable task = self.findTask();
+            if (task != null) {
+                self.runTask(task);
+                spins = 0;
+            } else if (spins < JOIN_SPINS) {
+                spins++;
+                Thread.onSpinWait();
+            } else {
+                self.awaitCompletion(future);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        return future.get();
+    }
+
+    private Worker currentWorker() {
+        if (Thread.currentThread() instanceof Worker worker && worker.owner() == this) {
+            return worker;
+        }
+        return null;
+    }
+
+    @Override
+    boolean rejectsNewTasks() {
+        // Running fan-out trees may keep splitting after shutdown(); only shutdownNow() stops them.
+        return isStopped || (isShutdown && currentWorker() == null);
+    }
+
+    @Override
+    void enqueue(Runnable task) {
+        Worker self = currentWorker();
+        if (self != null) {
+            self.deque.offerFirst(task);
+        } else {
+            submissionQueue.offer(task);
+        }
+        signalWork();
+    }
+
+    /**
+     * Publishes the batch with a single wake-up. A worker that takes a task from the submission queue or a
+     * victim's deque and leaves more behind wakes the next one.
+     */
+    @Override
+    void enqueueAll(List<? extends Runnable> tasks) {
+        Worker self = currentWorker();
+        if (self != null) {
+            for (Runnable task : tasks) {
+                self.deque.offerFirst(task);
+            }
+        } else {
+            submissionQueue.addAll(tasks);
+        }
+        signalWork();
+    }
+
+    private void signalWork() {
+        for (Worker worker : workers) {
+            if (worker.parked) {
+                LockSupport.unpark(worker);
+                return;
+            }
+        }
+    }
+
+    private boolean hasQueuedTasks() {
+        if (!submissionQueue.isEmpty()) {
+            return true;
+        }
+        for (Worker worker : workers) {
+            if (!worker.deque.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void shutdown() {
+        isShutdown = true;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        isShutdown = true;
+        isStopped = true;
+
+        List<Runnable> notExecutedTasks = new ArrayList<>();
+        Runnable task;
+        while ((task = submissionQueue.poll()) != null) {
+            notExecutedTasks.add(task);
+        }
+        for (Worker worker : workers) {
+            while ((task = worker.deque.pollLast()) != null) {
+                notExecutedTasks.add(task);
+            }
+            worker.interrupt();
+        }
+
+        return notExecutedTasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return isShutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return isTerminated;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Worker worker : workers) {
+            TimeUnit.NANOSECONDS.timedJoin(worker, deadline - System.nanoTime());
+        }
+        return isTerminated;
+    }
+
+    private final class Worker extends Thread {
+        private final Deque<Runnable> deque = new ConcurrentLinkedDeque<>();
+        private volatile boolean parked = false;
+        private volatile boolean joining = false;
+
+        Worker(int index) {
+            super("WorkStealingExecService worker-" + index);
+        }
+
+        WorkStealingExecService owner() {
+            return WorkStealingExecService.this;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isStopped) {
+                    Runnable task = findTask();
+                    if (task != null) {
+                        runTask(task);
+                    } else if (isShutdown) {
+                        break;
+                    } else {
+                        awaitWork();
+                    }
+                }
+            } finally {
+                if (liveWorkers.decrementAndGet() == 0) {
+                    isTerminated = true;
+                }
+            }
+        }
+
+        Runnable findTask() {
+            Runnable task = deque.pollFirst();
+            if (task == null) {
+                task = submissionQueue.poll();
+                if (task != null && !submissionQueue.isEmpty()) {
+                    signalWork();
+                }
+            }
+            if (task == null) {
+                task = steal();
+            }
+            return task;
+        }
+
+        private Runnable steal() {
+            int n = workers.size();
+            int start = ThreadLocalRandom.current().nextInt(n);
+            for (int i = 0; i < n; i++) {
+                Worker victim = workers.get((start + i) % n);
+                if (victim != this) {
+                    Runnable task = victim.deque.pollLast();
+                    if (task != null) {
+                        if (!victim.deque.isEmpty()) {
+                            signalWork();
+                        }
+                        return task;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void awaitWork() {
+            parked = true;
+            // Re-check after publishing the flag: enqueue() offers first and reads the flag second.
+            if (!hasQueuedTasks() && !isShutdown) {
+                LockSupport.park(this);
+            }
+            parked = false;
+            Thread.interrupted();
+        }
+
+        /**
+         * Parks a joining worker. It counts as parked for {@link #signalWork()}, so new work wakes it up,
+         * and every finished task wakes it to check its future.
+         */
+        void awaitCompletion(Future<?> future) {
+            joining = true;
+            parked = true;
+            parkedJoiners.incrementAndGet();
+            // Re-check after publishing the flags: a finishing task reads them after completing its future.
+            if (!future.isDone() && !hasQueuedTasks() && !isStopped) {
+                LockSupport.parkNanos(this, JOIN_PARK_NANOS);
+            }
+            parkedJoiners.decrementAndGet();
+            parked = false;
+            joining = false;
+        }
+
+        void runTask(Runnable task) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                getUncaughtExceptionHandler().uncaughtException(this, t);
+            }
+            if (parkedJoiners.get() > 0) {
+                for (Worker worker : workers) {
+                    if (worker.joining) {
+                        LockSupport.unpark(worker);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachedLineSourceTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testStatsCountHitsAndLoads() throws Exception {
+        LineLookupEngineTest.writeFiles(root, 3);
+        CachedLineSource cached = new CachedLineSource(root, 1 << 20);
+
+        for (int round = 0; round < 2; round++) {
+            for (int d = 0; d < 3; d++) {
+                for (int f = 0; f < 3; f++) {
+                    for (int l = 0; l < 3; l++) {
+                        cached.line(new LineQuery(d, f, l));
+                    }
+                }
+            }
+        }
+
+        CachedLineSource.Stats stats = cached.stats();
+        assertEquals(9, stats.misses());
+        assertEquals(9, stats.loads());
+        assertEquals(45, stats.hits());
+        assertEquals(0, stats.evictions());
+        assertEquals(9, stats.files());
+        assertEquals(45 / 54.0, stats.hitRate(), 1e-9);
+    }
+
+    @Test
+    void testSizeBoundedEviction() throws Exception {
+        LineLookupEngineTest.writeFiles(root, 8);
+        long fileBytes = Files.size(new LineQuery(0, 0, 0).resolve(root));
+        // Room for about two files per stripe.
+        long maxBytes = 16 * 2 * (fileBytes + 200);
+        CachedLineSource cached = new CachedLineSource(root, maxBytes);
+
+        for (int d = 0; d < 8; d++) {
+            for (int f = 0; f < 8; f++) {
+                cached.line(new LineQuery(d, f, 0));
+            }
+        }
+
+        CachedLineSource.Stats stats = cached.stats();
+        assertEquals(64, stats.loads());
+        assertTrue(stats.evictions() > 0);
+        assertEquals(64, stats.files() + stats.evictions());
+        assertTrue(stats.bytes() <= maxBytes, "Cached " + stats.bytes() + " of " + maxBytes);
+    }
+
+    @Test
+    void testRepeatedlyReadFileSurvivesScan() throws Exception {
+        LineLookupEngineTest.writeFiles(root, 16);
+        long fileBytes = Files.size(new LineQuery(0, 0, 0).resolve(root));
+        CachedLineSource cached = new CachedLineSource(root, 16 * 4 * (fileBytes + 200));
+        LineQuery hot = new LineQuery(0, 0, 0);
+        cached.line(hot);
+        cached.line(hot);
+
+        // A scan over every file, each read once, overflows the cache many times over.
+        for (int d = 1; d < 16; d++) {
+            for (int f = 0; f < 16; f++) {
+                cached.line(new LineQuery(d, f, 0));
+            }
+        }
+        long loads = cached.stats().loads();
+        cached.line(hot);
+
+        assertEquals(loads, cached.stats().loads());
+    }
+
+    @Test
+    void testConcurrentMissesLoadOnce() throws Exception {
+        LineLookupEngineTest.writeFiles(root, 1);
+        CachedLineSource cached = new CachedLineSource(root, 1 << 20);
+        MyExecService s = MyExecService.newInstance(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(() -> {
+                start.await();
+                return cached.line(new LineQuery(0, 0, 0));
+            });
+        }
+
+        List<Future<String>> futures = s.submitAll(tasks);
+        start.countDown();
+        for (Future<String> future : futures) {
+            assertEquals("0:0:0:Lorem ipsum dolor sil amet...", future.get());
+        }
+        s.shutdown();
+
+        assertEquals(1, cached.stats().loads());
+        assertEquals(8, cached.stats().hits() + cached.stats().misses());
+    }
+
+    @Test
+    void testMissingFileIsNotCached() throws Exception {
+        CachedLineSource cached = new CachedLineSource(root, 1 << 20);
+
+        assertThrows(NoSuchFileException.class, () -> cached.line(new LineQuery(0, 0, 0)));
+        assertThrows(NoSuchFileException.class, () -> cached.line(new LineQuery(0, 0, 0)));
+        assertEquals(0, cached.stats().files());
+    }
+
+    @Test
+    void testEngineReportsThroughCache() throws Exception {
+        LineLookupEngineTest.writeFiles(root, LineLookupEngineTest.SIZE);
+        CachedLineSource cached = new CachedLineSource(root, 1 << 20);
+
+        LineLookupEngine.Report report = new LineLookupEngine(cached, LineLookupEngine.Mode.VIRTUAL, 16, 1)
+                .run(LineLookupEngineTest.randomQueries(1_000));
+
+        assertEquals(0, report.failures());
+        int files = LineLookupEngineTest.SIZE * LineLookupEngineTest.SIZE;
+        assertEquals(files, cached.stats().loads());
+        assertTrue(cached.stats().hitRate() > 0.9);
+    }
+}
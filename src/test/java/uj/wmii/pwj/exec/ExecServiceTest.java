@@ -2,17 +2,35 @@ package uj.wmii.pwj.exec;
 
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 public class ExecServiceTest {
     @Test
@@ -155,6 +173,18 @@ public class ExecServiceTest {
         });
     }
 
+    @Test
+    void TestInvokeAnyHugeTimeout() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        List<Callable<String>> list = new ArrayList<>();
+        list.add(new StringCallable("A", 20));
+        list.add(new StringCallable("B", 5));
+
+        assertEquals("A", s.invokeAny(list, Long.MAX_VALUE, TimeUnit.NANOSECONDS));
+        assertEquals("A", s.invokeAny(list, Long.MAX_VALUE, TimeUnit.DAYS));
+        s.shutdown();
+    }
+
     @Test
     void TestInvokeAnyException() throws Exception {
         MyExecService s = MyExecService.newInstance();
@@ -212,6 +242,49 @@ public class ExecServiceTest {
         });
     }
 
+    @Test
+    void TestInvokeAnyWaitsWithoutBurningCpu() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        List<Callable<String>> list = new ArrayList<>();
+        list.add(new StringCallable("A", 500));
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isCurrentThreadCpuTimeSupported());
+
+        long cpu0 = threads.getCurrentThreadCpuTime();
+        String result = s.invokeAny(list);
+        long cpuMillis = TimeUnit.NANOSECONDS.toMillis(threads.getCurrentThreadCpuTime() - cpu0);
+
+        assertEquals("A", result);
+        assertTrue(cpuMillis < 100, "invokeAny used " + cpuMillis + " ms of CPU while waiting");
+    }
+
+    @Test
+    void TestInvokeAnyCancelsQueuedTasks() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        AtomicInteger completedLosers = new AtomicInteger();
+        List<Callable<String>> list = new ArrayList<>();
+        list.add(new StringCallable("A", 5));
+        for (int i = 0; i < 5; i++) {
+            list.add(() -> {
+                doSleep(100);
+                completedLosers.incrementAndGet();
+                return "loser";
+            });
+        }
+
+        assertEquals("A", s.invokeAny(list));
+        doSleep(300);
+
+        assertEquals(0, completedLosers.get());
+    }
+
+    @Test
+    void TestInvokeAnyEmptyCollection() {
+        MyExecService s = MyExecService.newInstance();
+
+        assertThrows(IllegalArgumentException.class, () -> s.invokeAny(List.<Callable<String>>of()));
+    }
+
     @Test
     void testProcessExecutesTasks() throws InterruptedException {
         MyExecService s = MyExecService.newInstance();
@@ -353,49 +426,1211 @@ public class ExecServiceTest {
         assertFalse(terminated);
     }
 
+    @Test
+    void testMultipleWorkersRunTasksConcurrently() throws Exception {
+        MyExecService s = MyExecService.newInstance(4);
+        List<Future<String>> futures = new ArrayList<>();
 
-    static void doSleep(int milis) {
+        long t0 = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            futures.add(s.submit(new StringCallable("R" + i, 300)));
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals("R" + i, futures.get(i).get());
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+        assertTrue(elapsedMillis < 900, "4 tasks of 300 ms took " + elapsedMillis + " ms on 4 workers");
+        s.shutdown();
+    }
+
+    @Test
+    void testShutdownTerminatesAllIdleWorkers() throws Exception {
+        MyExecService s = MyExecService.newInstance(4);
+        s.shutdown();
+
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+        assertTrue(s.isTerminated());
+    }
+
+    @Test
+    void testShutdownNowInterruptsAllWorkers() throws Exception {
+        MyExecService s = MyExecService.newInstance(3);
+        List<Future<String>> running = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            running.add(s.submit(new StringCallable("R" + i, 5000)));
+        }
+        Future<String> queued = s.submit(new StringCallable("Q", 5));
+        doSleep(100);
+
+        List<Runnable> pending = s.shutdownNow();
+
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+        assertTrue(s.isTerminated());
+        assertEquals(List.of(queued), pending);
+        for (Future<String> f : running) {
+            assertThrows(ExecutionException.class, f::get);
+        }
+    }
+
+    @Test
+    void testIsTerminatedOnlyAfterLastWorkerExits() throws Exception {
+        MyExecService s = MyExecService.newInstance(2);
+        s.submit(new StringCallable("A", 5));
+        Future<String> slow = s.submit(new StringCallable("B", 300));
+        doSleep(50);
+        s.shutdown();
+
+        assertFalse(s.awaitTermination(50, TimeUnit.MILLISECONDS));
+        assertFalse(s.isTerminated());
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+        assertTrue(s.isTerminated());
+        assertEquals("B", slow.get());
+    }
+
+    @Test
+    void testFailingCommandDoesNotKillWorker() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((t, e) -> { });
         try {
-            Thread.sleep(milis);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            s.execute(() -> {
+                throw new IllegalStateException("boom");
+            });
+            Future<String> f = s.submit(new StringCallable("A", 5));
+
+            assertEquals("A", f.get(1000, TimeUnit.MILLISECONDS));
+            assertFalse(s.isTerminated());
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+            s.shutdown();
         }
     }
 
-}
+    @Test
+    void testCpuBoundThroughputScalesWithWorkers() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        assumeTrue(cores >= 2, "scaling needs at least 2 cores");
+        int workers = Math.min(cores, 8);
 
-class StringCallable implements Callable<String> {
+        long single = timeCpuBoundBatch(1, 64);
+        long parallel = timeCpuBoundBatch(workers, 64);
+        double speedup = (double) single / parallel;
 
-    private final String result;
-    private final int milis;
-    private final boolean shouldThrow;
+        assertTrue(speedup > workers * 0.5, "speedup " + speedup + " with " + workers + " workers");
+    }
 
-    StringCallable(String result, int milis) {
-        this.result = result;
-        this.milis = milis;
-        this.shouldThrow = false;
+    @Test
+    void testLockFreeQueueWithManyProducers() throws Exception {
+        MyExecService s = MyExecService.newLockFreeInstance();
+        int producers = 16;
+        int tasksPerProducer = 5_000;
+        AtomicInteger executed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(producers * tasksPerProducer);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < tasksPerProducer; i++) {
+                    s.execute(() -> {
+                        executed.incrementAndGet();
+                        done.countDown();
+                    });
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(producers * tasksPerProducer, executed.get());
+        s.shutdown();
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
     }
 
-    StringCallable(String result, int milis, boolean shouldThrow) {
-        this.result = result;
-        this.milis = milis;
-        this.shouldThrow = shouldThrow;
+    @Test
+    void testLockFreeQueueCountsAndDrainsAlongsidePoll() throws Exception {
+        MpscTaskQueue<Integer> queue = new MpscTaskQueue<>();
+        for (int i = 0; i < 10_000; i++) {
+            queue.offer(i);
+        }
+        queue.offerAll(List.of(-1, -2, -3));
+        assertEquals(10_003, queue.size());
+        assertEquals(0, queue.poll());
+        assertEquals(10_002, queue.size());
+
+        List<Integer> polled = new ArrayList<>();
+        Thread consumer = Thread.ofPlatform().start(() -> {
+            Integer e;
+            while ((e = queue.poll()) != null) {
+                polled.add(e);
+            }
+        });
+        List<Integer> drained = new ArrayList<>();
+        queue.drainTo(drained);
+        consumer.join();
+
+        Set<Integer> all = new HashSet<>(polled);
+        all.addAll(drained);
+        assertEquals(10_002, polled.size() + drained.size());
+        assertEquals(10_002, all.size());
+        assertEquals(0, queue.size());
+        assertTrue(queue.isEmpty());
     }
 
-    @Override
-    public String call() throws Exception {
-        if (shouldThrow){
-            throw new RuntimeException("Exception");
+    @Test
+    void testLockFreeQueueRequiresSingleWorker() {
+        assertThrows(IllegalArgumentException.class,
+                () -> MyExecService.builder().threads(2).taskQueue(new MpscTaskQueue<>()).build());
+    }
+
+    @Test
+    void testBoundedQueueAbortPolicy() throws Exception {
+        MyExecService s = MyExecService.builder().capacity(2).build();
+        CountDownLatch release = new CountDownLatch(1);
+        s.execute(() -> awaitQuietly(release));
+        doSleep(50);
+        s.submit(new TestRunnable());
+        s.submit(new TestRunnable());
+
+        RejectedExecutionException e = assertThrows(RejectedExecutionException.class, () -> s.submit(new TestRunnable()));
+        assertEquals("Task queue is full", e.getMessage());
+        release.countDown();
+        s.shutdown();
+    }
+
+    @Test
+    void testBoundedQueueCallerRunsPolicy() throws Exception {
+        MyExecService s = MyExecService.builder()
+                .capacity(1)
+                .saturationPolicy(SaturationPolicy.callerRuns())
+                .build();
+        CountDownLatch release = new CountDownLatch(1);
+        s.execute(() -> awaitQuietly(release));
+        doSleep(50);
+        s.submit(new TestRunnable());
+
+        Future<String> f = s.submit(() -> Thread.currentThread().getName());
+
+        assertTrue(f.isDone());
+        assertEquals(Thread.currentThread().getName(), f.get());
+        release.countDown();
+        s.shutdown();
+    }
+
+    @Test
+    void testBoundedQueueDiscardOldestPolicy() throws Exception {
+        MyExecService s = MyExecService.builder()
+                .capacity(1)
+                .saturationPolicy(SaturationPolicy.discardOldest())
+                .build();
+        CountDownLatch release = new CountDownLatch(1);
+        s.execute(() -> awaitQuietly(release));
+        doSleep(50);
+        Future<String> oldest = s.submit(new StringCallable("A", 5));
+        Future<String> newest = s.submit(new StringCallable("B", 5));
+        release.countDown();
+
+        assertTrue(oldest.isCancelled());
+        assertEquals("B", newest.get(1000, TimeUnit.MILLISECONDS));
+        s.shutdown();
+    }
+
+    @Test
+    void testDiscardOldestDropsKeyedMailboxWithoutStallingKey() throws Exception {
+        MyExecService s = MyExecService.builder()
+                .capacity(1)
+                .saturationPolicy(SaturationPolicy.discardOldest())
+                .build();
+        KeyedSerialExecutor keyed = new KeyedSerialExecutor(s);
+        CountDownLatch release = new CountDownLatch(1);
+        s.execute(() -> awaitQuietly(release));
+        doSleep(50);
+        Future<String> first = keyed.submit("k", new StringCallable("A", 5));
+        Future<String> second = keyed.submit("k", new StringCallable("B", 5));
+        Future<String> evicting = s.submit(new StringCallable("C", 5));
+
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+        assertEquals(0, keyed.activeKeys());
+        release.countDown();
+        assertEquals("C", evicting.get(1000, TimeUnit.MILLISECONDS));
+        assertEquals("D", keyed.submit("k", new StringCallable("D", 5)).get(1000, TimeUnit.MILLISECONDS));
+        s.shutdown();
+    }
+
+    @Test
+    void testRejectedKeyedScheduleSettlesRacingTasks() throws Exception {
+        CountDownLatch scheduling = new CountDownLatch(1);
+        CountDownLatch racerAdded = new CountDownLatch(1);
+        AtomicBoolean saturated = new AtomicBoolean(true);
+        MyExecService s = MyExecService.newInstance(2);
+        KeyedSerialExecutor keyed = new KeyedSerialExecutor(command -> {
+            if (saturated.getAndSet(false)) {
+                scheduling.countDown();
+                awaitQuietly(racerAdded);
+                throw new RejectedExecutionException("Saturated");
+            }
+            s.execute(command);
+        });
+        FutureTask<String> first = new FutureTask<>(new StringCallable("A", 0));
+
+        Future<?> firstCall = s.submit(() -> keyed.execute("k", first));
+        assertTrue(scheduling.await(1, TimeUnit.SECONDS));
+        // Queued behind the mailbox that is about to be rejected, so this add does not schedule it.
+        Future<String> racer = keyed.submit("k", new StringCallable("B", 0));
+        racerAdded.countDown();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> firstCall.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        assertTrue(first.isCancelled());
+        assertTrue(racer.isCancelled());
+        assertEquals(0, keyed.activeKeys());
+        assertEquals("C", keyed.submit("k", new StringCallable("C", 0)).get(1, TimeUnit.SECONDS));
+        s.shutdown();
+    }
+
+    @Test
+    void testKeyedBacklogUnderCallerRunsDoesNotRecurse() throws Exception {
+        MyExecService s = MyExecService.builder()
+                .capacity(1)
+                .saturationPolicy(SaturationPolicy.callerRuns())
+                .build();
+        KeyedSerialExecutor keyed = new KeyedSerialExecutor(s);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch firstRunning = new CountDownLatch(1);
+        s.execute(() -> awaitQuietly(release));
+        doSleep(50);
+        s.execute(new TestRunnable());
+        int[] depths = new int[2];
+
+        // The queue is full, so the mailbox runs in the calling thread, which the first task holds up.
+        Thread caller = new Thread(() -> keyed.execute("k", () -> {
+            depths[0] = Thread.currentThread().getStackTrace().length;
+            firstRunning.countDown();
+            doSleep(100);
+        }));
+        caller.start();
+        assertTrue(firstRunning.await(1, TimeUnit.SECONDS));
+        for (int i = 0; i < 64 * 50; i++) {
+            keyed.execute("k", () -> { });
+        }
+        keyed.execute("k", () -> depths[1] = Thread.currentThread().getStackTrace().length);
+        caller.join(5000);
+
+        // 50 batches, every one handed back to a still-full queue and run inline by the caller.
+        assertFalse(caller.isAlive());
+        assertTrue(depths[1] - depths[0] < 10, "Stack grew from " + depths[0] + " to " + depths[1]);
+        release.countDown();
+        s.shutdown();
+    }
+
+    @Test
+    void testBoundedQueueBlockWithTimeoutPolicy() throws Exception {
+        MyExecService s = MyExecService.builder()
+                .capacity(1)
+                .saturationPolicy(SaturationPolicy.blockWithTimeout(1000, TimeUnit.MILLISECONDS))
+                .build();
+        s.submit(new StringCallable("A", 200));
+        doSleep(50);
+        s.submit(new StringCallable("B", 5));
+
+        long t0 = System.nanoTime();
+        Future<String> f = s.submit(new StringCallable("C", 5));
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+        assertTrue(waitedMillis >= 50, "submit returned after " + waitedMillis + " ms");
+        assertEquals("C", f.get(1000, TimeUnit.MILLISECONDS));
+
+        MyExecService impatient = MyExecService.builder()
+                .capacity(1)
+                .saturationPolicy(SaturationPolicy.blockWithTimeout(20, TimeUnit.MILLISECONDS))
+                .build();
+        impatient.submit(new StringCallable("D", 500));
+        doSleep(50);
+        impatient.submit(new StringCallable("E", 5));
+        assertThrows(RejectedExecutionException.class, () -> impatient.submit(new StringCallable("F", 5)));
+        s.shutdown();
+        impatient.shutdown();
+    }
+
+    @Test
+    void testWatermarkCallbacks() throws Exception {
+        List<String> events = new CopyOnWriteArrayList<>();
+        MyExecService s = MyExecService.builder()
+                .watermarks(3, 1, new WatermarkListener() {
+                    @Override
+                    public void onHighWatermark(int queueDepth) {
+                        events.add("high:" + queueDepth);
+                    }
+
+                    @Override
+                    public void onLowWatermark(int queueDepth) {
+                        events.add("low:" + queueDepth);
+                    }
+                })
+                .build();
+        CountDownLatch release = new CountDownLatch(1);
+        s.execute(() -> awaitQuietly(release));
+        doSleep(50);
+        for (int i = 0; i < 4; i++) {
+            s.submit(new TestRunnable());
+        }
+        assertEquals(List.of("high:3"), events);
+
+        release.countDown();
+        s.shutdown();
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+        assertEquals(List.of("high:3", "low:1"), events);
+    }
+
+    @Test
+    void testScheduleCallable() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        long t0 = System.nanoTime();
+
+        ScheduledFuture<String> f = s.schedule(new StringCallable("A", 0), 100, TimeUnit.MILLISECONDS);
+
+        assertEquals("A", f.get(1000, TimeUnit.MILLISECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) >= 100);
+        s.shutdown();
+    }
+
+    @Test
+    void testScheduledTaskRunsOnWorker() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+
+        ScheduledFuture<String> f = s.schedule(() -> Thread.currentThread().getName(), 10, TimeUnit.MILLISECONDS);
+
+        assertEquals("MyExecService processing thread-0", f.get(1000, TimeUnit.MILLISECONDS));
+        s.shutdown();
+    }
+
+    @Test
+    void testScheduleAtFixedRate() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        CountDownLatch ticks = new CountDownLatch(5);
+
+        long t0 = System.nanoTime();
+        ScheduledFuture<?> f = s.scheduleAtFixedRate(ticks::countDown, 0, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(ticks.await(1000, TimeUnit.MILLISECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) >= 80);
+        assertTrue(f.cancel(false));
+        assertTrue(f.isCancelled());
+        s.shutdown();
+    }
+
+    @Test
+    void testScheduleWithFixedDelay() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        AtomicInteger runs = new AtomicInteger();
+
+        ScheduledFuture<?> f = s.scheduleWithFixedDelay(() -> {
+            runs.incrementAndGet();
+            doSleep(30);
+        }, 0, 20, TimeUnit.MILLISECONDS);
+        doSleep(330);
+        f.cancel(false);
+
+        int count = runs.get();
+        assertTrue(count >= 3 && count <= 8, "ran " + count + " times");
+        s.shutdown();
+    }
+
+    @Test
+    void testCancelledScheduledTaskDoesNotRun() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        TestRunnable r = new TestRunnable();
+
+        ScheduledFuture<?> f = s.schedule(r, 50, TimeUnit.MILLISECONDS);
+        assertTrue(f.cancel(false));
+        doSleep(150);
+
+        assertFalse(r.wasRun);
+        s.shutdown();
+    }
+
+    @Test
+    void testShutdownCancelsPendingScheduledTasks() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        ScheduledFuture<?> delayed = s.schedule(new TestRunnable(), 10, TimeUnit.SECONDS);
+        ScheduledFuture<?> periodic = s.scheduleAtFixedRate(new TestRunnable(), 0, 10, TimeUnit.MILLISECONDS);
+        doSleep(50);
+
+        s.shutdown();
+
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+        doSleep(20);
+        assertTrue(delayed.isCancelled());
+        assertTrue(periodic.isCancelled());
+        assertThrows(RejectedExecutionException.class, () -> s.schedule(new TestRunnable(), 1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testTimerSurvivesFailingSaturationPolicy() throws Exception {
+        MyExecService s = MyExecService.builder()
+                .capacity(1)
+                .saturationPolicy((task, queue) -> {
+                    throw new IllegalStateException("policy failed");
+                })
+                .build();
+        List<Throwable> reported = new CopyOnWriteArrayList<>();
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((t, e) -> reported.add(e));
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            s.execute(() -> awaitQuietly(release));
+            doSleep(50);
+            s.execute(new TestRunnable());
+            ScheduledFuture<?> failed = s.schedule(new TestRunnable(), 10, TimeUnit.MILLISECONDS);
+            doSleep(100);
+
+            assertTrue(failed.isCancelled());
+            assertEquals(1, reported.size());
+            assertEquals("policy failed", reported.get(0).getMessage());
+            release.countDown();
+            assertEquals("A", s.schedule(() -> "A", 10, TimeUnit.MILLISECONDS).get(1000, TimeUnit.MILLISECONDS));
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+            s.shutdown();
+        }
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testTimerThreadDoesNotRunTasksUnderCallerRuns() throws Exception {
+        MyExecService s = MyExecService.builder()
+                .capacity(1)
+                .saturationPolicy(SaturationPolicy.callerRuns())
+                .build();
+        CountDownLatch release = new CountDownLatch(1);
+        s.execute(() -> awaitQuietly(release));
+        doSleep(50);
+        s.execute(new TestRunnable());
+        ScheduledFuture<String> f = s.schedule(() -> Thread.currentThread().getName(), 10, TimeUnit.MILLISECONDS);
+        doSleep(100);
+
+        assertFalse(f.isDone());
+        release.countDown();
+        assertTrue(f.get(1000, TimeUnit.MILLISECONDS).startsWith("MyExecService processing thread"));
+        s.shutdown();
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testScheduleManyTimeouts() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        int count = 100_000;
+        AtomicInteger fired = new AtomicInteger();
+        List<ScheduledFuture<?>> futures = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            futures.add(s.schedule(fired::incrementAndGet, 1000 + i % 200, TimeUnit.MILLISECONDS));
+        }
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(futures.get(i).cancel(false));
+        }
+        for (int i = 1; i < count; i += 2) {
+            futures.get(i).get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(count / 2, fired.get());
+        assertTrue(futures.get(0).isCancelled());
+        s.shutdown();
+    }
+
+    @Test
+    void testPriorityLanesServeHighPriorityFirst() throws Exception {
+        MyExecService s = MyExecService.builder().priorityLanes().build();
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        s.execute(() -> awaitQuietly(release));
+        doSleep(50);
+        for (int i = 0; i < 3; i++) {
+            String name = "L" + i;
+            s.submit(() -> order.add(name), TaskPriority.LOW);
+        }
+        for (int i = 0; i < 3; i++) {
+            String name = "H" + i;
+            s.submit(() -> order.add(name), TaskPriority.HIGH);
+        }
+
+        release.countDown();
+        s.shutdown();
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+
+        assertEquals(List.of("H0", "H1", "H2", "L0", "L1", "L2"), order);
+    }
+
+    @Test
+    void testLowPriorityLaneIsNotStarved() throws Exception {
+        MyExecService s = MyExecService.builder().priorityLanes(2, 1, 1).build();
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        s.execute(() -> awaitQuietly(release));
+        doSleep(50);
+        for (int i = 0; i < 6; i++) {
+            String name = "H" + i;
+            s.submit(() -> order.add(name), TaskPriority.HIGH);
+        }
+        s.execute(new PrioritizedRunnable(() -> order.add("L0"), TaskPriority.LOW));
+        s.execute(new PrioritizedRunnable(() -> order.add("L1"), TaskPriority.LOW));
+
+        release.countDown();
+        s.shutdown();
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+
+        assertEquals(List.of("H0", "H1", "L0", "H2", "H3", "L1", "H4", "H5"), order);
+    }
+
+    @Test
+    void testPlainSubmitKeepsTaskPriority() throws Exception {
+        MyExecService s = MyExecService.builder().priorityLanes().build();
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        s.execute(() -> awaitQuietly(release));
+        doSleep(50);
+        Future<?> low = s.submit(new PrioritizedRunnable(() -> order.add("L"), TaskPriority.LOW));
+        Future<String> high = s.submit(new PrioritizedRunnable(() -> order.add("H"), TaskPriority.HIGH), "H");
+
+        release.countDown();
+        assertEquals("H", high.get(1000, TimeUnit.MILLISECONDS));
+        low.get(1000, TimeUnit.MILLISECONDS);
+
+        // Submitted in the other order, so only the lanes can have put the HIGH task first.
+        assertEquals(List.of("H", "L"), order);
+        s.shutdown();
+    }
+
+    @Test
+    void testQueueWaitTimePerLane() throws Exception {
+        MyExecService s = MyExecService.builder().priorityLanes().build();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(s.submit(new TestRunnable(), TaskPriority.HIGH));
+            futures.add(s.submit(new TestRunnable(), TaskPriority.LOW));
+            futures.add(s.submit(new TestRunnable()));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+
+        assertEquals(10, s.queueWaitTime(TaskPriority.HIGH).snapshot().count());
+        assertEquals(10, s.queueWaitTime(TaskPriority.NORMAL).snapshot().count());
+        assertEquals(10, s.queueWaitTime(TaskPriority.LOW).snapshot().count());
+        assertThrows(IllegalStateException.class, () -> MyExecService.newInstance().queueWaitTime(TaskPriority.HIGH));
+        s.shutdown();
+    }
+
+    @Test
+    void testKeyedTasksRunInOrderPerKey() throws Exception {
+        MyExecService s = MyExecService.newInstance(4);
+        int keys = 8;
+        int tasksPerKey = 500;
+        Map<Integer, List<Integer>> seen = new ConcurrentHashMap<>();
+        List<Future<Integer>> futures = new ArrayList<>();
+
+        for (int i = 0; i < tasksPerKey; i++) {
+            for (int k = 0; k < keys; k++) {
+                int key = k;
+                int seq = i;
+                futures.add(s.submit((Object) key, () -> {
+                    seen.computeIfAbsent(key, x -> new ArrayList<>()).add(seq);
+                    return seq;
+                }));
+            }
+        }
+        for (Future<Integer> f : futures) {
+            f.get(5, TimeUnit.SECONDS);
+        }
+
+        for (int k = 0; k < keys; k++) {
+            List<Integer> order = seen.get(k);
+            assertEquals(tasksPerKey, order.size());
+            for (int i = 0; i < tasksPerKey; i++) {
+                assertEquals(i, order.get(i));
+            }
+        }
+        s.shutdown();
+    }
+
+    @Test
+    void testDifferentKeysRunInParallel() throws Exception {
+        MyExecService s = MyExecService.newInstance(3);
+        List<Future<String>> futures = new ArrayList<>();
+
+        long t0 = System.nanoTime();
+        for (int k = 0; k < 3; k++) {
+            futures.add(s.submit("account-" + k, new StringCallable("A", 300)));
+        }
+        for (Future<String> f : futures) {
+            f.get();
+        }
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) < 800);
+        s.shutdown();
+    }
+
+    @Test
+    void testSameKeyDoesNotOverlap() throws Exception {
+        MyExecService s = MyExecService.newInstance(4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(20);
+
+        for (int i = 0; i < 20; i++) {
+            s.execute("file.txt", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                doSleep(5);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        s.shutdown();
+    }
+
+    @Test
+    void testKeyedMailboxesAreCollected() throws Exception {
+        MyExecService s = MyExecService.newInstance(2);
+        KeyedSerialExecutor keyed = new KeyedSerialExecutor(s);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int k = 0; k < 1_000; k++) {
+            futures.add(keyed.submit(k, new StringCallable("A", 0)));
+        }
+        for (Future<String> f : futures) {
+            f.get();
+        }
+        doSleep(20);
+
+        assertEquals(0, keyed.activeKeys());
+        s.shutdown();
+    }
+
+    @Test
+    void testMetricsCountTasksAndLatencies() throws Exception {
+        MyExecService s = MyExecService.builder().metrics(true).build();
+        List<Throwable> reported = new CopyOnWriteArrayList<>();
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((t, e) -> reported.add(e));
+        try {
+            s.execute(() -> doSleep(20));
+            for (int i = 0; i < 5; i++) {
+                s.submit(new StringCallable("A", 0));
+            }
+            s.submit(new StringCallable("B", 0, true));
+            s.execute(() -> {
+                throw new IllegalStateException("expected");
+            });
+            s.shutdown();
+            assertTrue(s.awaitTermination(1, TimeUnit.SECONDS));
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+        }
+
+        // The failing command is reported, the failing callable only completes its future exceptionally.
+        assertEquals(1, reported.size());
+        assertEquals("expected", reported.get(0).getMessage());
+        ExecMetrics.Snapshot metrics = s.metrics();
+        assertEquals(8, metrics.submitted());
+        assertEquals(6, metrics.completed());
+        assertEquals(2, metrics.failed());
+        assertEquals(0, metrics.rejected());
+        assertEquals(0, metrics.queueDepth());
+        assertEquals(8, metrics.runTime().count());
+        assertTrue(metrics.runTime().max() >= TimeUnit.MILLISECONDS.toNanos(20));
+        // Everything behind the sleeping task waited for it.
+        assertTrue(metrics.queueWait().percentile(0.5) >= TimeUnit.MILLISECONDS.toNanos(15));
+    }
+
+    @Test
+    void testMetricsCountRejections() throws Exception {
+        MyExecService s = MyExecService.builder().capacity(1).metrics(true).build();
+        CountDownLatch release = new CountDownLatch(1);
+        s.execute(() -> awaitQuietly(release));
+        doSleep(20);
+        s.execute(() -> { });
+        assertThrows(RejectedExecutionException.class, () -> s.execute(() -> { }));
+
+        ExecMetrics.Snapshot metrics = s.metrics();
+        assertEquals(2, metrics.submitted());
+        assertEquals(1, metrics.rejected());
+        assertEquals(1, metrics.queueDepth());
+        release.countDown();
+        s.shutdown();
+    }
+
+    @Test
+    void testMetricsAreOffByDefault() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        assertEquals("A", s.submit(new StringCallable("A", 0)).get());
+        assertThrows(IllegalStateException.class, s::metrics);
+        assertThrows(IllegalStateException.class, () -> s.registerMBean("metrics-off"));
+        s.shutdown();
+    }
+
+    @Test
+    void testMetricsMBean() throws Exception {
+        MyExecService s = MyExecService.builder().metrics(true).build();
+        ObjectName name = s.registerMBean("metrics-test");
+        try {
+            s.submit(new StringCallable("A", 0)).get();
+            s.shutdown();
+            assertTrue(s.awaitTermination(1, TimeUnit.SECONDS));
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "SubmittedTasks"));
+            assertEquals(1L, server.getAttribute(name, "CompletedTasks"));
+            assertEquals(0, server.getAttribute(name, "QueueDepth"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    @Test
+    void testSubmitAllReturnsFuturesInOrder() throws Exception {
+        MyExecService s = MyExecService.newInstance(2);
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            tasks.add(new StringCallable(Integer.toString(i), 0));
+        }
+
+        List<Future<String>> futures = s.submitAll(tasks);
+
+        assertEquals(tasks.size(), futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(Integer.toString(i), futures.get(i).get(1, TimeUnit.SECONDS));
+        }
+        s.shutdown();
+    }
+
+    @Test
+    void testSubmitAllWakesEveryWorker() throws Exception {
+        int workers = 4;
+        MyExecService s = MyExecService.newInstance(workers);
+        doSleep(50);
+        CountDownLatch allRunning = new CountDownLatch(workers);
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            tasks.add(() -> {
+                allRunning.countDown();
+                return allRunning.await(1, TimeUnit.SECONDS);
+            });
+        }
+
+        // Only succeeds if the single wake-up is passed on from worker to worker.
+        for (Future<Boolean> f : s.submitAll(tasks)) {
+            assertTrue(f.get(2, TimeUnit.SECONDS));
+        }
+        s.shutdown();
+    }
+
+    @Test
+    void testSubmitAllOverCapacityCancelsBatch() throws Exception {
+        MyExecService s = MyExecService.builder().capacity(5).build();
+        CountDownLatch release = new CountDownLatch(1);
+        s.execute(() -> awaitQuietly(release));
+        doSleep(20);
+        AtomicInteger ran = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(ran::incrementAndGet);
+        }
+
+        assertThrows(RejectedExecutionException.class, () -> s.submitAll(tasks));
+        release.countDown();
+        s.shutdown();
+        assertTrue(s.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals(0, ran.get());
+    }
+
+    @Test
+    void testSubmitAllAfterShutdown() {
+        MyExecService s = MyExecService.newInstance();
+        s.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> s.submitAll(List.of(new StringCallable("A", 0))));
+        assertThrows(NullPointerException.class, () -> MyExecService.newInstance().submitAll(null));
+    }
+
+    @Test
+    void testSubmitAllWithPriorityLanesAndLockFreeQueue() throws Exception {
+        List<Callable<String>> tasks = List.of(new StringCallable("A", 0), new StringCallable("B", 0));
+        for (MyExecService s : List.of(MyExecService.builder().priorityLanes().build(), MyExecService.newLockFreeInstance())) {
+            List<Future<String>> futures = s.submitAll(tasks);
+            assertEquals("A", futures.get(0).get(1, TimeUnit.SECONDS));
+            assertEquals("B", futures.get(1).get(1, TimeUnit.SECONDS));
+            s.shutdown();
+        }
+    }
+
+    @Test
+    void testLinkedTaskQueueOfferAllFillsToCapacity() {
+        LinkedTaskQueue<Integer> queue = new LinkedTaskQueue<>(3);
+        queue.offer(0);
+
+        assertEquals(2, queue.offerAll(List.of(1, 2, 3, 4)));
+        assertEquals(0, queue.offerAll(List.of(5)));
+        assertEquals(0, queue.remainingCapacity());
+        List<Integer> drained = new ArrayList<>();
+        queue.drainTo(drained);
+        assertEquals(List.of(0, 1, 2), drained);
+        assertEquals(1, queue.offerAll(List.of(5)));
+        assertEquals(5, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void testSupplyAsyncRunsOnWorker() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+
+        CompletableFuture<String> f = s.supplyAsync(() -> Thread.currentThread().getName());
+
+        assertEquals("MyExecService processing thread-0", f.get(1, TimeUnit.SECONDS));
+        s.runAsync(() -> { }).get(1, TimeUnit.SECONDS);
+        s.shutdown();
+    }
+
+    @Test
+    void testAsyncStagesDefaultToThisExecutor() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        CompletableFuture<String> source = s.supplyAsync(() -> "A");
+        source.get(1, TimeUnit.SECONDS);
+
+        // Registered on an already completed future from the test thread, so the stage is queued.
+        String thread = source.thenApplyAsync(v -> Thread.currentThread().getName()).get(1, TimeUnit.SECONDS);
+
+        assertEquals("MyExecService processing thread-0", thread);
+        s.shutdown();
+    }
+
+    @Test
+    void testAsyncStageRegisteredInsideTaskIsNotRunByCaller() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        CompletableFuture<String> source = s.supplyAsync(() -> "A");
+        source.get(1, TimeUnit.SECONDS);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<String> stage = s.submit(() -> {
+            CompletableFuture<String> registered = source.thenApplyAsync(v -> {
+                order.add("stage");
+                return v;
+            });
+            order.add("caller");
+            return registered;
+        }).get(1, TimeUnit.SECONDS);
+
+        assertEquals("A", stage.get(1, TimeUnit.SECONDS));
+        // On a single worker the stage can only run once the task that registered it has returned.
+        assertEquals(List.of("caller", "stage"), order);
+        s.shutdown();
+    }
+
+    @Test
+    void testAsyncChainQueuesEveryStage() throws Exception {
+        MyExecService s = MyExecService.builder().threads(2).metrics(true).build();
+        CountDownLatch start = new CountDownLatch(1);
+        CompletableFuture<Integer> f = s.supplyAsync(() -> {
+            awaitQuietly(start);
+            return 0;
+        });
+        for (int i = 0; i < 10; i++) {
+            f = f.thenApplyAsync(v -> v + 1);
+        }
+        start.countDown();
+
+        assertEquals(10, f.get(1, TimeUnit.SECONDS));
+        assertEquals(11, s.metrics().submitted());
+        s.shutdown();
+    }
+
+    @Test
+    void testSupplyAsyncFailure() {
+        MyExecService s = MyExecService.newInstance();
+
+        CompletableFuture<String> f = s.supplyAsync(() -> {
+            throw new IllegalStateException("expected");
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> f.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        s.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> s.supplyAsync(() -> "A"));
+    }
+
+    @Test
+    void testElasticPoolGrowsWhenWorkersBlock() throws Exception {
+        MyExecService s = MyExecService.builder()
+                .elasticThreads(1, 4, 200, TimeUnit.MILLISECONDS)
+                .queueWaitTarget(5, TimeUnit.MILLISECONDS)
+                .build();
+        CountDownLatch allRunning = new CountDownLatch(4);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(s.submit(() -> {
+                allRunning.countDown();
+                return allRunning.await(2, TimeUnit.SECONDS);
+            }));
+        }
+
+        for (Future<Boolean> f : futures) {
+            assertTrue(f.get(3, TimeUnit.SECONDS));
+        }
+        assertEquals(4, s.poolSize());
+        s.shutdown();
+        assertTrue(s.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testElasticPoolShrinksAfterKeepAlive() throws Exception {
+        MyExecService s = MyExecService.builder()
+                .elasticThreads(1, 3, 50, TimeUnit.MILLISECONDS)
+                .queueWaitTarget(5, TimeUnit.MILLISECONDS)
+                .build();
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            s.execute(() -> awaitQuietly(release));
+        }
+        doSleep(200);
+        assertEquals(3, s.poolSize());
+
+        release.countDown();
+        doSleep(300);
+
+        assertEquals(1, s.poolSize());
+        assertEquals("A", s.submit(new StringCallable("A", 0)).get(1, TimeUnit.SECONDS));
+        s.shutdown();
+        assertTrue(s.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testElasticPoolGrowsOnQueueWaitAndStaysWithinMax() throws Exception {
+        MyExecService s = MyExecService.builder()
+                .elasticThreads(1, 2, 1, TimeUnit.SECONDS)
+                .queueWaitTarget(5, TimeUnit.MILLISECONDS)
+                .build();
+        AtomicInteger maxPoolSize = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            // Busy tasks never block, so only the queue wait can trigger growth.
+            futures.add(s.submit(() -> {
+                long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+                while (System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+                maxPoolSize.accumulateAndGet(s.poolSize(), Math::max);
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(2, maxPoolSize.get());
+        s.shutdown();
+        assertTrue(s.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testElasticThreadsValidation() {
+        assertThrows(IllegalArgumentException.class, () -> MyExecService.builder().elasticThreads(0, 2, 1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> MyExecService.builder().elasticThreads(3, 2, 1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> MyExecService.builder().elasticThreads(1, 2, 0, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> MyExecService.builder()
+                .taskQueue(new MpscTaskQueue<>()).elasticThreads(1, 2, 1, TimeUnit.SECONDS).build());
+    }
+
+    @Test
+    void testIdleStrategiesRunTasks() throws Exception {
+        List<IdleStrategy> strategies = List.of(
+                IdleStrategy.blocking(),
+                IdleStrategy.busySpin(),
+                IdleStrategy.spinThenYield(100),
+                IdleStrategy.backoff(100, 10, 10, 1000, TimeUnit.MICROSECONDS));
+        for (IdleStrategy strategy : strategies) {
+            MyExecService s = MyExecService.builder().idleStrategy(strategy).metrics(true).build();
+            for (int i = 0; i < 20; i++) {
+                assertEquals("A", s.submit(new StringCallable("A", 0)).get(1, TimeUnit.SECONDS));
+                doSleep(1);
+            }
+            assertEquals(20, s.metrics().queueWait().count());
+            s.shutdown();
+            assertTrue(s.awaitTermination(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testBackoffWorkerStillStopsOnShutdownNow() throws Exception {
+        MyExecService s = MyExecService.builder()
+                .idleStrategy(IdleStrategy.backoff(0, 0, 1, 1, TimeUnit.SECONDS))
+                .build();
+        doSleep(20);
+
+        s.shutdownNow();
+
+        assertTrue(s.awaitTermination(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testBackoffWorkersStopPromptlyOnShutdown() throws Exception {
+        MyExecService s = MyExecService.builder()
+                .threads(3)
+                .idleStrategy(IdleStrategy.backoff(0, 0, 10, 10, TimeUnit.SECONDS))
+                .build();
+        // Every worker is parked for 10 s by now.
+        doSleep(50);
+
+        s.shutdown();
+
+        assertTrue(s.awaitTermination(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testBackoffValidation() {
+        assertThrows(IllegalArgumentException.class, () -> IdleStrategy.backoff(-1, 0, 1, 1, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> IdleStrategy.backoff(0, 0, 0, 1, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> IdleStrategy.backoff(0, 0, 2, 1, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> IdleStrategy.spinThenYield(-1));
+    }
+
+    @Test
+    void testTimedInvokeAllInterruptsRunningTasks() throws Exception {
+        MyExecService s = MyExecService.newInstance(2);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        List<Callable<String>> tasks = List.of(new StringCallable("A", 0), () -> {
+            try {
+                Thread.sleep(5000);
+                return "B";
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+        });
+
+        List<Future<String>> futures = s.invokeAll(tasks, 50, TimeUnit.MILLISECONDS);
+
+        assertEquals("A", futures.get(0).get());
+        assertTrue(futures.get(1).isCancelled());
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        s.shutdown();
+        assertTrue(s.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testExpiredTaskIsDroppedInsteadOfRun() throws Exception {
+        MyExecService s = MyExecService.builder().metrics(true).build();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean ran = new AtomicBoolean();
+        s.execute(() -> awaitQuietly(release));
+        Future<?> stale = s.submit(() -> ran.set(true), 10, TimeUnit.MILLISECONDS);
+        Future<String> fresh = s.submit(new StringCallable("A", 0), 10, TimeUnit.SECONDS);
+        doSleep(30);
+        release.countDown();
+
+        assertEquals("A", fresh.get(1, TimeUnit.SECONDS));
+        assertTrue(stale.isCancelled());
+        assertFalse(ran.get());
+        s.shutdown();
+        assertTrue(s.awaitTermination(1, TimeUnit.SECONDS));
+        ExecMetrics.Snapshot metrics = s.metrics();
+        assertEquals(1, metrics.expired());
+        assertEquals(2, metrics.completed());
+    }
+
+    @Test
+    void testTimedInvokeAllAttachesDeadline() throws Exception {
+        MyExecService s = MyExecService.builder().metrics(true).build();
+        AtomicBoolean ran = new AtomicBoolean();
+        List<Callable<String>> tasks = List.of(new StringCallable("A", 200), () -> {
+            ran.set(true);
+            return "B";
+        });
+
+        List<Future<String>> futures = s.invokeAll(tasks, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(futures.get(1).isCancelled());
+        s.shutdown();
+        assertTrue(s.awaitTermination(1, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+        assertEquals(1, s.metrics().expired());
+    }
+
+    @Test
+    void testEarliestDeadlineFirst() throws Exception {
+        MyExecService s = MyExecService.builder().earliestDeadlineFirst(1, TimeUnit.SECONDS).build();
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        s.execute(() -> awaitQuietly(release));
+        doSleep(20);
+        s.submit(() -> order.add("none"));
+        s.submit(() -> order.add("300"), 300, TimeUnit.SECONDS);
+        s.submit(() -> order.add("100"), 100, TimeUnit.SECONDS);
+        s.submit(() -> order.add("200"), 200, TimeUnit.SECONDS);
+        Future<?> last = s.submit(() -> order.add("2"), 2, TimeUnit.SECONDS);
+        release.countDown();
+        s.shutdown();
+        assertTrue(s.awaitTermination(1, TimeUnit.SECONDS));
+
+        assertTrue(last.isDone());
+        assertEquals(List.of("none", "2", "100", "200", "300"), order);
+    }
+
+    @Test
+    void testEarliestDeadlineFirstValidation() {
+        assertThrows(IllegalArgumentException.class,
+                () -> MyExecService.builder().earliestDeadlineFirst(-1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class,
+                () -> MyExecService.builder().earliestDeadlineFirst(1, TimeUnit.SECONDS).priorityLanes().build());
+    }
+
+    static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long timeCpuBoundBatch(int workers, int tasks) throws Exception {
+        MyExecService s = MyExecService.newInstance(workers);
+        List<Future<Long>> futures = new ArrayList<>();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            futures.add(s.submit(() -> spin(2_000_000)));
+        }
+        for (Future<Long> f : futures) {
+            f.get();
+        }
+        long elapsed = System.nanoTime() - t0;
+        s.shutdown();
+        s.awaitTermination(1, TimeUnit.SECONDS);
+        return elapsed;
+    }
+
+    static long spin(int iterations) {
+        long x = 17;
+        for (int i = 0; i < iterations; i++) {
+            x = x * 6364136223846793005L + 1442695040888963407L;
         }
-        ExecServiceTest.doSleep(milis);
-        return result;
+        return x;
     }
+
+
+    static void doSleep(int milis) {
+        try {
+            Thread.sleep(milis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 }
-class TestRunnable implements Runnable {
 
-    boolean wasRun;
+record PrioritizedRunnable(Runnable task, TaskPriority priority) implements Runnable, Prioritized {
+
     @Override
     public void run() {
-        wasRun = true;
+        task.run();
     }
 }
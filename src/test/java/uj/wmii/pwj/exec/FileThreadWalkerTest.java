@@ -0,0 +1,34 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileThreadWalkerTest {
+
+    @Test
+    void testQueriesStayInsideGivenLayout() {
+        FileThreadWalker.Options options = FileThreadWalker.Options.parse(
+                new String[]{"--dirs", "2", "--files", "3", "--lines", "4"});
+
+        List<LineQuery> queries = FileThreadWalker.randomQueries(42, 1_000, options.dirs(), options.files(),
+                options.lines()).toList();
+
+        assertEquals(1_000, queries.size());
+        assertTrue(queries.stream().allMatch(q -> q.dir() < 2 && q.file() < 3 && q.line() < 4));
+        assertTrue(queries.stream().anyMatch(q -> q.dir() == 1 && q.file() == 2 && q.line() == 3));
+    }
+
+    @Test
+    void testLayoutDefaultsToFilesCreator() {
+        FileThreadWalker.Options options = FileThreadWalker.Options.parse(new String[0]);
+
+        assertEquals(FilesCreator.SIZE, options.dirs());
+        assertEquals(FilesCreator.SIZE, options.files());
+        assertEquals(FilesCreator.SIZE, options.lines());
+        assertThrows(IllegalArgumentException.class,
+                () -> FileThreadWalker.Options.parse(new String[]{"--lines", "0"}));
+    }
+}
@@ -0,0 +1,60 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FilesCreatorTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testGeneratedFilesMatchOriginalFormat() throws Exception {
+        FilesCreator.Result result = FilesCreator.generate(root,
+                new FilesCreator.Layout(3, 4, 5, FilesCreator.TEMPLATE), 2);
+
+        long bytes = 0;
+        for (int d = 0; d < 3; d++) {
+            for (int f = 0; f < 4; f++) {
+                List<String> expected = new ArrayList<>();
+                for (int l = 0; l < 5; l++) {
+                    expected.add(d + ":" + f + ":" + l + ":Lorem ipsum dolor sil amet...");
+                }
+                Path file = new LineQuery(d, f, 0).resolve(root);
+                assertEquals(expected, Files.readAllLines(file));
+                bytes += Files.size(file);
+            }
+        }
+        assertEquals(12, result.files());
+        assertEquals(bytes, result.bytes());
+        assertTrue(result.megabytesPerSecond() > 0);
+    }
+
+    @Test
+    void testCustomTemplateAndRegeneration() throws Exception {
+        FilesCreator.generate(root, new FilesCreator.Layout(1, 1, 20, FilesCreator.TEMPLATE), 1);
+        FilesCreator.generate(root, new FilesCreator.Layout(1, 1, 12, "line {line} of {file} in {dir}, {line}!"), 1);
+
+        List<String> lines = Files.readAllLines(new LineQuery(0, 0, 0).resolve(root));
+        assertEquals(12, lines.size());
+        assertEquals("line 10 of 0 in 0, 10!", lines.get(10));
+        assertEquals("line 11 of 0 in 0, 11!", LineSource.readAllLines(root).line(new LineQuery(0, 0, 11)));
+    }
+
+    @Test
+    void testValidation() {
+        assertThrows(IllegalArgumentException.class, () -> new FilesCreator.Layout(0, 1, 1, FilesCreator.TEMPLATE));
+        assertThrows(NullPointerException.class, () -> new FilesCreator.Layout(1, 1, 1, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> FilesCreator.generate(root, new FilesCreator.Layout(1, 1, 1, "a\nb"), 1));
+        assertThrows(IllegalArgumentException.class, () -> FilesCreator.Options.parse(new String[]{"--dirs"}));
+        assertThrows(IllegalArgumentException.class, () -> FilesCreator.Options.parse(new String[]{"--size", "1"}));
+    }
+}
@@ -0,0 +1,86 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FixedWidthLineSourceTest {
+
+    @TempDir
+    Path text;
+
+    @TempDir
+    Path fixed;
+
+    private void generate(int dirs, int files, int lines) throws Exception {
+        FilesCreator.generate(text, new FilesCreator.Layout(dirs, files, lines, FilesCreator.TEMPLATE), 2);
+        FilesCreator.generate(fixed, new FilesCreator.Layout(dirs, files, lines, FilesCreator.TEMPLATE,
+                FilesCreator.Format.FIXED), 2);
+    }
+
+    @Test
+    void testFixedLinesMatchTextLines() throws Exception {
+        generate(3, 4, 12);
+        LineSource expected = LineSource.readAllLines(text);
+        FixedWidthLineSource source = FixedWidthLineSource.open(fixed);
+
+        // "2:3:11:Lorem ipsum dolor sil amet..." is the longest line.
+        int width = "2:3:11:Lorem ipsum dolor sil amet...".length() + 1;
+        assertEquals(width, source.recordWidth());
+        for (int d = 0; d < 3; d++) {
+            for (int f = 0; f < 4; f++) {
+                Path file = new LineQuery(d, f, 0).resolve(fixed);
+                assertEquals(12L * width, Files.size(file));
+                for (int l = 0; l < 12; l++) {
+                    LineQuery query = new LineQuery(d, f, l);
+                    assertEquals(expected.line(query), source.line(query));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testMissingLines() throws Exception {
+        generate(1, 1, 5);
+        FixedWidthLineSource source = FixedWidthLineSource.open(fixed);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> source.line(new LineQuery(0, 0, 5)));
+        assertThrows(IndexOutOfBoundsException.class, () -> source.line(new LineQuery(0, 0, -1)));
+        String[] lines = source.lines(List.of(new LineQuery(0, 0, 4), new LineQuery(0, 0, 7), new LineQuery(0, 0, 0)));
+        assertArrayEquals(new String[]{"0:0:4:Lorem ipsum dolor sil amet...", null,
+                "0:0:0:Lorem ipsum dolor sil amet..."}, lines);
+    }
+
+    @Test
+    void testTextFileIsRejected() throws Exception {
+        generate(1, 1, 12);
+        // Line 10 is longer than line 0, so the text file does not line up with its first record.
+        FixedWidthLineSource source = FixedWidthLineSource.open(text);
+
+        assertThrows(IOException.class, () -> source.line(new LineQuery(0, 0, 11)));
+        assertThrows(IllegalArgumentException.class, () -> new FixedWidthLineSource(fixed, 0));
+    }
+
+    @Test
+    void testEngineRunsOverFixedWidthFiles() throws Exception {
+        generate(LineLookupEngineTest.SIZE, LineLookupEngineTest.SIZE, LineLookupEngineTest.SIZE);
+        long expectedChars = new LineLookupEngine(LineSource.readAllLines(text), LineLookupEngine.Mode.POOL, 8, 2)
+                .run(LineLookupEngineTest.randomQueries(300)).chars();
+
+        for (int batch : new int[]{1, 8}) {
+            LineLookupEngine.Report report = new LineLookupEngine(FixedWidthLineSource.open(fixed),
+                    LineLookupEngine.Mode.VIRTUAL, 8, 1, batch, 1, TimeUnit.SECONDS)
+                    .run(LineLookupEngineTest.randomQueries(300));
+
+            assertEquals(0, report.failures());
+            assertEquals(expectedChars, report.chars());
+        }
+    }
+}
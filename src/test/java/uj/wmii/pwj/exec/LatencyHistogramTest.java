@@ -0,0 +1,54 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void testPercentilesWithinBucketPrecision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 100_000; v++) {
+            h.record(v * 1_000);
+        }
+        LatencyHistogram.Snapshot snapshot = h.snapshot();
+
+        assertEquals(100_000, snapshot.count());
+        assertEquals(50_000_000, snapshot.percentile(0.5), 50_000_000 * 0.035);
+        assertEquals(99_000_000, snapshot.percentile(0.99), 99_000_000 * 0.035);
+        assertEquals(100_000_000, snapshot.max(), 100_000_000 * 0.035);
+    }
+
+    @Test
+    void testSmallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(3);
+        h.record(7);
+        h.record(-5);
+
+        LatencyHistogram.Snapshot snapshot = h.snapshot();
+        assertEquals(0, snapshot.percentile(0.1));
+        assertEquals(7, snapshot.max());
+    }
+
+    @Test
+    void testBucketBoundsCoverEveryValue() {
+        long[] values = {31, 32, 33, 63, 64, 65, 1_000, 123_456_789, Long.MAX_VALUE};
+        for (long v : values) {
+            int index = LatencyHistogram.indexOf(v);
+            assertTrue(LatencyHistogram.upperBoundOf(index) >= v, "upper bound of " + v);
+            assertTrue(index == 0 || LatencyHistogram.upperBoundOf(index - 1) < v, "previous bucket of " + v);
+        }
+    }
+
+    @Test
+    void testEmptyAndReset() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.snapshot().percentile(0.99));
+        h.record(1_000);
+        h.reset();
+
+        assertEquals(0, h.snapshot().count());
+    }
+}
@@ -0,0 +1,77 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineIndexTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testEmptyFileHasNoLines() throws Exception {
+        Path file = root.resolve("empty.txt");
+        Files.createFile(file);
+        LineIndex.build(file);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> LineIndex.readLine(file, 0));
+    }
+
+    @Test
+    void testMissingSidecar() throws Exception {
+        Path file = root.resolve("plain.txt");
+        Files.writeString(file, "a\n");
+
+        assertThrows(NoSuchFileException.class, () -> LineIndex.readLine(file, 0));
+    }
+
+    @Test
+    void testUpdateIsIncremental() throws Exception {
+        LineLookupEngineTest.writeFiles(root, 2);
+
+        LineIndex.UpdateResult first = LineIndex.update(root, 2);
+        assertEquals(4, first.rebuilt());
+        assertEquals(0, first.upToDate());
+
+        LineIndex.UpdateResult second = LineIndex.update(root, 2);
+        assertEquals(0, second.rebuilt());
+        assertEquals(4, second.upToDate());
+
+        Path changed = new LineQuery(1, 0, 0).resolve(root);
+        Files.writeString(changed, "appended\n", StandardOpenOption.APPEND);
+        Path touched = new LineQuery(0, 1, 0).resolve(root);
+        Files.setLastModifiedTime(touched, FileTime.fromMillis(Files.getLastModifiedTime(touched).toMillis() + 5_000));
+        Path deleted = new LineQuery(1, 1, 0).resolve(root);
+        Files.delete(deleted);
+
+        LineIndex.UpdateResult third = LineIndex.update(root, 2);
+        assertEquals(2, third.rebuilt());
+        assertEquals(1, third.upToDate());
+        assertEquals(1, third.removed());
+        assertFalse(Files.exists(LineIndex.sidecarOf(deleted)));
+        assertEquals("appended", LineIndex.readLine(changed, 2));
+    }
+
+    @Test
+    void testIndexedSourceInEngine() throws Exception {
+        LineLookupEngineTest.writeFiles(root, LineLookupEngineTest.SIZE);
+        LineIndex.update(root, 1);
+
+        LineLookupEngine.Report report = new LineLookupEngine(LineSource.indexed(root), LineLookupEngine.Mode.POOL, 8, 2)
+                .run(LineLookupEngineTest.randomQueries(100));
+
+        assertEquals(100, report.lookups());
+        assertEquals(0, report.failures());
+        List<String> expected = Files.readAllLines(new LineQuery(3, 2, 0).resolve(root));
+        assertEquals(expected.get(1), LineSource.indexed(root).line(new LineQuery(3, 2, 1)));
+    }
+}
@@ -0,0 +1,199 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineLookupEngineTest {
+
+    static final int SIZE = 4;
+
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void createFiles() throws IOException {
+        writeFiles(root, SIZE);
+    }
+
+    static void writeFiles(Path root, int size) throws IOException {
+        for (int d = 0; d < size; d++) {
+            Files.createDirectories(root.resolve(Integer.toString(d)));
+            for (int f = 0; f < size; f++) {
+                List<String> lines = new ArrayList<>();
+                for (int l = 0; l < size; l++) {
+                    lines.add(d + ":" + f + ":" + l + ":Lorem ipsum dolor sil amet...");
+                }
+                Files.write(new LineQuery(d, f, 0).resolve(root), lines);
+            }
+        }
+    }
+
+    static Stream<LineQuery> randomQueries(int count) {
+        Random r = new Random(42);
+        return Stream.generate(() -> new LineQuery(r.nextInt(SIZE), r.nextInt(SIZE), r.nextInt(SIZE))).limit(count);
+    }
+
+    @Test
+    void testReadAllLinesSource() throws Exception {
+        LineSource source = LineSource.readAllLines(root);
+
+        assertEquals("2:3:1:Lorem ipsum dolor sil amet...", source.line(new LineQuery(2, 3, 1)));
+        assertThrows(IndexOutOfBoundsException.class, () -> source.line(new LineQuery(0, 0, SIZE)));
+    }
+
+    @Test
+    void testEveryModeAnswersEveryQuery() throws Exception {
+        LineSource source = LineSource.readAllLines(root);
+        long expectedChars = randomQueries(200)
+                .mapToLong(q -> (q.dir() + ":" + q.file() + ":" + q.line() + ":Lorem ipsum dolor sil amet...").length())
+                .sum();
+
+        for (LineLookupEngine.Mode mode : LineLookupEngine.Mode.values()) {
+            LineLookupEngine.Report report = new LineLookupEngine(source, mode, 8, 2).run(randomQueries(200));
+
+            assertEquals(mode, report.mode());
+            assertEquals(200, report.lookups());
+            assertEquals(0, report.failures());
+            assertEquals(expectedChars, report.chars());
+            assertEquals(200, report.latency().count());
+            assertTrue(report.throughput() > 0);
+        }
+    }
+
+    @Test
+    void testFailedLookupsAreCounted() throws Exception {
+        LineLookupEngine engine = new LineLookupEngine(LineSource.readAllLines(root), LineLookupEngine.Mode.POOL, 4, 2);
+
+        LineLookupEngine.Report report = engine.run(Stream.of(
+                new LineQuery(0, 0, 0), new LineQuery(0, 0, SIZE), new LineQuery(SIZE, 0, 0)));
+
+        assertEquals(3, report.lookups());
+        assertEquals(2, report.failures());
+    }
+
+    @Test
+    void testConcurrencyIsBounded() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        LineSource source = query -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            ExecServiceTest.doSleep(1);
+            inFlight.decrementAndGet();
+            return "";
+        };
+
+        LineLookupEngine.Report report = new LineLookupEngine(source, LineLookupEngine.Mode.VIRTUAL, 3, 1)
+                .run(randomQueries(100));
+
+        assertEquals(100, report.lookups());
+        assertTrue(maxInFlight.get() <= 3, "Max in flight: " + maxInFlight.get());
+    }
+
+    @Test
+    void testVirtualModeRunsOnVirtualThreadExecService() throws Exception {
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        LineSource source = query -> {
+            if (!Thread.currentThread().isVirtual()) {
+                throw new IOException("Not on a virtual thread");
+            }
+            threadNames.add(Thread.currentThread().getName());
+            return "";
+        };
+
+        LineLookupEngine.Report report = new LineLookupEngine(source, LineLookupEngine.Mode.VIRTUAL, 4, 1)
+                .run(randomQueries(20));
+
+        assertEquals(0, report.failures());
+        assertFalse(threadNames.isEmpty());
+        assertTrue(threadNames.stream().allMatch(name -> name.startsWith("VirtualThreadExecService-")),
+                "Threads: " + threadNames);
+    }
+
+    @Test
+    void testBatchingReadsEachFileOncePerBatch() throws Exception {
+        LineSource readAllLines = LineSource.readAllLines(root);
+        AtomicInteger fileReads = new AtomicInteger();
+        LineSource counting = new LineSource() {
+            @Override
+            public String line(LineQuery query) throws IOException {
+                fileReads.incrementAndGet();
+                return readAllLines.line(query);
+            }
+
+            @Override
+            public String[] lines(List<LineQuery> queries) throws IOException {
+                fileReads.incrementAndGet();
+                return readAllLines.lines(queries);
+            }
+        };
+        long expectedChars = new LineLookupEngine(readAllLines, LineLookupEngine.Mode.POOL, 8, 2)
+                .run(randomQueries(400)).chars();
+
+        LineLookupEngine.Report report = new LineLookupEngine(counting, LineLookupEngine.Mode.POOL, 8, 2,
+                8, 10, TimeUnit.SECONDS).run(randomQueries(400));
+
+        assertEquals(400, report.lookups());
+        assertEquals(0, report.failures());
+        assertEquals(expectedChars, report.chars());
+        assertEquals(400, report.latency().count());
+        assertEquals(report.tasks(), fileReads.get());
+        // 400 queries over 16 files: every file gathers a full batch of 8 several times over.
+        assertTrue(report.batchingFactor() >= 6, "Batching factor " + report.batchingFactor());
+    }
+
+    @Test
+    void testZeroWindowDoesNotBatch() throws Exception {
+        LineLookupEngine.Report report = new LineLookupEngine(LineSource.readAllLines(root),
+                LineLookupEngine.Mode.VIRTUAL, 8, 1, 8, 0, TimeUnit.MILLISECONDS).run(randomQueries(100));
+
+        assertEquals(100, report.tasks());
+        assertEquals(1.0, report.batchingFactor());
+    }
+
+    @Test
+    void testBatchFailuresStayPerQuery() throws Exception {
+        List<LineQuery> queries = List.of(new LineQuery(1, 1, 0), new LineQuery(1, 1, SIZE), new LineQuery(1, 1, 2),
+                new LineQuery(SIZE, 0, 0), new LineQuery(SIZE, 0, 1));
+
+        for (LineSource source : List.of(LineSource.readAllLines(root), indexedSource())) {
+            LineLookupEngine.Report report = new LineLookupEngine(source, LineLookupEngine.Mode.POOL, 4, 1,
+                    16, 1, TimeUnit.SECONDS).run(queries.stream());
+
+            assertEquals(5, report.lookups());
+            assertEquals(2, report.tasks());
+            assertEquals(3, report.failures());
+        }
+    }
+
+    private LineSource indexedSource() throws Exception {
+        LineIndex.update(root, 1);
+        return LineSource.indexed(root);
+    }
+
+    @Test
+    void testEngineValidation() {
+        LineSource source = LineSource.readAllLines(root);
+        assertThrows(NullPointerException.class, () -> new LineLookupEngine(source, null, 1, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LineLookupEngine(source, LineLookupEngine.Mode.POOL, 0, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LineLookupEngine(source, LineLookupEngine.Mode.POOL, 1, 1, 0, 1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LineLookupEngine(source, LineLookupEngine.Mode.POOL, 1, 1, 2, -1, TimeUnit.SECONDS));
+    }
+}
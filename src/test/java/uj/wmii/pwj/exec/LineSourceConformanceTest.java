@@ -0,0 +1,104 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * What every text-format {@link LineSource} must answer alike; the tests of each implementation only
+ * cover what is its own.
+ */
+public class LineSourceConformanceTest {
+
+    enum Kind {
+        READ_ALL_LINES {
+            @Override
+            LineSource open(Path root) {
+                return LineSource.readAllLines(root);
+            }
+        },
+        INDEXED {
+            @Override
+            LineSource open(Path root) throws IOException, InterruptedException {
+                LineIndex.update(root, 2);
+                return LineSource.indexed(root);
+            }
+        },
+        MAPPED {
+            @Override
+            LineSource open(Path root) {
+                return new MappedLineSource(root, 64);
+            }
+        },
+        CACHED {
+            @Override
+            LineSource open(Path root) {
+                return new CachedLineSource(root, 1 << 20);
+            }
+        };
+
+        /**
+         * Opens a source over the files already written under {@code root}.
+         */
+        abstract LineSource open(Path root) throws IOException, InterruptedException;
+    }
+
+    @TempDir
+    Path root;
+
+    @ParameterizedTest
+    @EnumSource(Kind.class)
+    void testLinesMatchWrittenFiles(Kind kind) throws Exception {
+        LineLookupEngineTest.writeFiles(root, 3);
+        LineSource source = kind.open(root);
+
+        // Twice, so that sources keeping state answer from it the second time.
+        for (int round = 0; round < 2; round++) {
+            for (int d = 0; d < 3; d++) {
+                for (int f = 0; f < 3; f++) {
+                    for (int l = 0; l < 3; l++) {
+                        assertEquals(d + ":" + f + ":" + l + ":Lorem ipsum dolor sil amet...",
+                                source.line(new LineQuery(d, f, l)));
+                    }
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Kind.class)
+    void testLineEndingsAndBounds(Kind kind) throws Exception {
+        Files.createDirectories(root.resolve("0"));
+        Files.writeString(new LineQuery(0, 0, 0).resolve(root), "first\r\n\nzażółć\nlast without newline");
+        LineSource source = kind.open(root);
+
+        assertEquals("first", source.line(new LineQuery(0, 0, 0)));
+        assertEquals("", source.line(new LineQuery(0, 0, 1)));
+        assertEquals("zażółć", source.line(new LineQuery(0, 0, 2)));
+        assertEquals("last without newline", source.line(new LineQuery(0, 0, 3)));
+        assertThrows(IndexOutOfBoundsException.class, () -> source.line(new LineQuery(0, 0, 4)));
+        assertThrows(IndexOutOfBoundsException.class, () -> source.line(new LineQuery(0, 0, -1)));
+        assertThrows(NoSuchFileException.class, () -> source.line(new LineQuery(0, 1, 0)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Kind.class)
+    void testBatchAnswersEachQuery(Kind kind) throws Exception {
+        LineLookupEngineTest.writeFiles(root, 3);
+        LineSource source = kind.open(root);
+
+        String[] lines = source.lines(List.of(new LineQuery(1, 2, 2), new LineQuery(1, 2, 3),
+                new LineQuery(1, 2, 0), new LineQuery(1, 2, -1)));
+
+        assertArrayEquals(new String[]{"1:2:2:Lorem ipsum dolor sil amet...", null,
+                "1:2:0:Lorem ipsum dolor sil amet...", null}, lines);
+    }
+}
@@ -0,0 +1,69 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedLineSourceTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testEachFileIsMappedOnce() throws Exception {
+        LineLookupEngineTest.writeFiles(root, 3);
+        MappedLineSource mapped = new MappedLineSource(root, 64);
+
+        for (int d = 0; d < 3; d++) {
+            for (int f = 0; f < 3; f++) {
+                for (int l = 0; l < 3; l++) {
+                    mapped.line(new LineQuery(d, f, l));
+                }
+            }
+        }
+
+        assertEquals(9, mapped.misses());
+        assertEquals(18, mapped.hits());
+    }
+
+    @Test
+    void testCacheIsBounded() throws Exception {
+        LineLookupEngineTest.writeFiles(root, 8);
+        MappedLineSource mapped = new MappedLineSource(root, 16);
+
+        for (int round = 0; round < 2; round++) {
+            for (int d = 0; d < 8; d++) {
+                for (int f = 0; f < 8; f++) {
+                    mapped.line(new LineQuery(d, f, 0));
+                }
+            }
+        }
+
+        // 64 files cycled through 16 slots: the second round cannot find most of them mapped any more.
+        assertTrue(mapped.misses() > 64 + 32, "Misses: " + mapped.misses());
+    }
+
+    @Test
+    void testSharedAcrossEngineWorkers() throws Exception {
+        LineLookupEngineTest.writeFiles(root, LineLookupEngineTest.SIZE);
+        MappedLineSource mapped = new MappedLineSource(root, 64);
+
+        LineLookupEngine.Report report = new LineLookupEngine(mapped, LineLookupEngine.Mode.POOL, 8, 4)
+                .run(LineLookupEngineTest.randomQueries(500));
+
+        assertEquals(0, report.failures());
+        int files = LineLookupEngineTest.SIZE * LineLookupEngineTest.SIZE;
+        // Racing workers may map a file twice, but every file is mapped a bounded number of times.
+        assertTrue(mapped.misses() >= files && mapped.misses() <= files * 4, "Misses: " + mapped.misses());
+        assertEquals(500, mapped.hits() + mapped.misses());
+    }
+
+    @Test
+    void testValidation() {
+        assertThrows(IllegalArgumentException.class, () -> new MappedLineSource(root, 1));
+        assertThrows(NullPointerException.class, () -> new MappedLineSource(null, 64));
+    }
+}
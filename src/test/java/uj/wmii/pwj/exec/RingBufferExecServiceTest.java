@@ -0,0 +1,203 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class RingBufferExecServiceTest {
+
+    @Test
+    void testRingBufferWrapsAround() {
+        RingBuffer<Integer> ring = new RingBuffer<>(3);
+        assertEquals(4, ring.capacity());
+
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(ring.offer(lap * 4 + i));
+            }
+            assertFalse(ring.offer(-1));
+            assertEquals(4, ring.size());
+            for (int i = 0; i < 4; i++) {
+                assertEquals(lap * 4 + i, ring.poll());
+            }
+            assertNull(ring.poll());
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    @Test
+    void testExecuteAndSubmit() throws Exception {
+        RingBufferExecService s = RingBufferExecService.newInstance(2);
+        AtomicInteger counter = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            s.execute(() -> {
+                counter.incrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(10_000, counter.get());
+        assertEquals("A", s.submit(new StringCallable("A", 10)).get());
+        s.shutdown();
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testInvokeAllThroughSmallRing() throws Exception {
+        RingBufferExecService s = new RingBufferExecService(2, 8);
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(new StringCallable("R" + i, 0));
+        }
+
+        List<Future<String>> futures = s.invokeAll(tasks);
+
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("R" + i, futures.get(i).get());
+        }
+        s.shutdown();
+    }
+
+    @Test
+    void testPooledFutureIsReused() throws Exception {
+        RingBufferExecService s = new RingBufferExecService(1, 1);
+
+        PooledFuture<String> first = s.submitPooled(new StringCallable("A", 0));
+        assertEquals("A", first.get(1, TimeUnit.SECONDS));
+        first.recycle();
+        PooledFuture<String> second = s.submitPooled(new StringCallable("B", 0));
+
+        assertSame(first, second);
+        assertEquals("B", second.get(1, TimeUnit.SECONDS));
+        assertThrows(IllegalStateException.class, () -> {
+            second.recycle();
+            second.recycle();
+        });
+        s.shutdown();
+    }
+
+    @Test
+    void testPooledFutureReportsFailureAndCancellation() throws Exception {
+        RingBufferExecService s = new RingBufferExecService(1, 4);
+        CountDownLatch release = new CountDownLatch(1);
+        s.execute(() -> ExecServiceTest.awaitQuietly(release));
+
+        PooledFuture<String> failing = s.submitPooled(new StringCallable("A", 0, true));
+        PooledFuture<String> cancelled = s.submitPooled(new StringCallable("B", 0));
+        assertThrows(java.util.concurrent.TimeoutException.class, () -> cancelled.get(10, TimeUnit.MILLISECONDS));
+        assertTrue(cancelled.cancel(false));
+        release.countDown();
+
+        assertThrows(ExecutionException.class, failing::get);
+        assertTrue(cancelled.isCancelled());
+        assertThrows(java.util.concurrent.CancellationException.class, cancelled::get);
+        s.shutdown();
+    }
+
+    @Test
+    void testCompletionCallback() throws Exception {
+        RingBufferExecService s = RingBufferExecService.newInstance(1);
+        CountDownLatch done = new CountDownLatch(2);
+        AtomicReference<String> result = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        s.execute(new StringCallable("A", 0), (value, error) -> {
+            result.set(value);
+            done.countDown();
+        });
+        s.execute(new StringCallable("B", 0, true), (value, error) -> {
+            failure.set(error);
+            done.countDown();
+        });
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals("A", result.get());
+        assertInstanceOf(RuntimeException.class, failure.get());
+        s.shutdown();
+    }
+
+    @Test
+    void testFullRingBlocksProducerUntilSlotFrees() throws Exception {
+        RingBufferExecService s = new RingBufferExecService(1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        s.execute(() -> ExecServiceTest.awaitQuietly(release));
+        ExecServiceTest.doSleep(20);
+        s.execute(() -> { });
+        s.execute(() -> { });
+
+        Thread producer = new Thread(() -> s.execute(() -> { }));
+        producer.start();
+        producer.join(100);
+        assertTrue(producer.isAlive());
+
+        release.countDown();
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+        s.shutdown();
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testShutdownNowReturnsPendingTasks() throws Exception {
+        RingBufferExecService s = new RingBufferExecService(1, 8);
+        Future<String> running = s.submit(new StringCallable("A", 500));
+        ExecServiceTest.doSleep(50);
+        Future<String> fB = s.submit(new StringCallable("B", 500));
+        Future<String> fC = s.submit(new StringCallable("C", 500));
+
+        List<Runnable> pending = s.shutdownNow();
+
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+        assertEquals(List.of(fB, fC), pending);
+        assertThrows(ExecutionException.class, running::get);
+        assertThrows(RejectedExecutionException.class, () -> s.execute(() -> { }));
+    }
+
+    @Test
+    void testSteadyStateSubmissionDoesNotAllocate() throws Exception {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        RingBufferExecService s = RingBufferExecService.newInstance(1);
+        Runnable empty = () -> { };
+        Callable<Boolean> task = () -> Boolean.TRUE;
+        int ops = 100_000;
+
+        // The first round pays for class loading and lambda linkage.
+        long bytesPerOp = 0;
+        for (int round = 0; round < 2; round++) {
+            long bytes0 = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < ops; i++) {
+                s.execute(empty);
+            }
+            submitPooledBatch(s, task, ops);
+            bytesPerOp = (threads.getCurrentThreadAllocatedBytes() - bytes0) / (2L * ops);
+        }
+
+        assertTrue(bytesPerOp < 2, "Submitting allocated " + bytesPerOp + " bytes per task");
+        s.shutdown();
+    }
+
+    private static void submitPooledBatch(RingBufferExecService s, Callable<Boolean> task, int ops) throws Exception {
+        for (int i = 0; i < ops; i++) {
+            PooledFuture<Boolean> future = s.submitPooled(task);
+            assertTrue(future.get());
+            future.recycle();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package uj.wmii.pwj.exec;
+
+import java.util.concurrent.Callable;
+
+class StringCallable implements Callable<String> {
+
+    private final String result;
+    private final int milis;
+    private final boolean shouldThrow;
+
+    StringCallable(String result, int milis) {
+        this.result = result;
+        this.milis = milis;
+        this.shouldThrow = false;
+    }
+
+    StringCallable(String result, int milis, boolean shouldThrow) {
+        this.result = result;
+        this.milis = milis;
+        this.shouldThrow = shouldThrow;
+    }
+
+    @Override
+    public String call() throws Exception {
+        if (shouldThrow){
+            throw new RuntimeException("Exception");
+        }
+        ExecServiceTest.doSleep(milis);
+        return result;
+    }
+}
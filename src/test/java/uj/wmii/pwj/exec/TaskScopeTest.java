@@ -0,0 +1,196 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TaskScopeTest {
+
+    @Test
+    void testForkAndJoin() throws Exception {
+        MyExecService s = MyExecService.newInstance(2);
+        List<Future<String>> futures = new ArrayList<>();
+
+        try (TaskScope scope = s.openScope()) {
+            for (int i = 0; i < 10; i++) {
+                futures.add(scope.fork(new StringCallable("R" + i, 5)));
+            }
+            scope.join();
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("R" + i, futures.get(i).resultNow());
+        }
+        s.shutdown();
+    }
+
+    @Test
+    void testFailureCancelsAndInterruptsSiblings() throws Exception {
+        MyExecService s = MyExecService.newInstance(2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Future<String> sibling;
+
+        long t0 = System.nanoTime();
+        try (TaskScope scope = s.openScope()) {
+            sibling = scope.fork(() -> {
+                started.countDown();
+                return sleepUntilInterrupted(interrupted);
+            });
+            // Fail only once the sibling runs, otherwise it is merely cancelled in the queue.
+            scope.fork(() -> {
+                started.await();
+                throw new IllegalStateException("expected");
+            });
+            assertThrows(ExecutionException.class, scope::join);
+            assertTrue(scope.isCancelled());
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+        assertTrue(sibling.isCancelled());
+        assertEquals(0, interrupted.getCount());
+        assertTrue(elapsedMillis < 1000, "Scope took " + elapsedMillis + " ms to fail");
+        s.shutdown();
+    }
+
+    @Test
+    void testDeadlineCancelsSubtree() throws Exception {
+        MyExecService s = MyExecService.newInstance(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Future<String> queued;
+
+        long t0 = System.nanoTime();
+        try (TaskScope scope = s.openScope(50, TimeUnit.MILLISECONDS)) {
+            scope.fork(() -> sleepUntilInterrupted(interrupted));
+            queued = scope.fork(new StringCallable("B", 0));
+            assertThrows(TimeoutException.class, scope::join);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+        // close() returned, so the running subtask has already stopped.
+        assertEquals(0, interrupted.getCount());
+        assertTrue(queued.isCancelled());
+        assertTrue(elapsedMillis < 1000, "Scope took " + elapsedMillis + " ms to time out");
+        s.shutdown();
+    }
+
+    @Test
+    void testDeadlineCancelsSubtreeWithoutJoin() throws Exception {
+        MyExecService s = MyExecService.newInstance(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        try (TaskScope scope = s.openScope(50, TimeUnit.MILLISECONDS)) {
+            Future<String> running = scope.fork(() -> sleepUntilInterrupted(interrupted));
+
+            // The owner never joins; the deadline alone stops the subtask.
+            assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+            assertTrue(scope.isCancelled());
+            assertTrue(running.isCancelled());
+        }
+        s.shutdown();
+    }
+
+    @Test
+    void testScopeFinishedInTimeJoinsAfterDeadline() throws Exception {
+        MyExecService s = MyExecService.newInstance(1);
+
+        try (TaskScope scope = s.openScope(20, TimeUnit.MILLISECONDS)) {
+            Future<String> done = scope.fork(new StringCallable("A", 0));
+            assertEquals("A", done.get(1, TimeUnit.SECONDS));
+            ExecServiceTest.doSleep(100);
+
+            scope.join();
+            assertFalse(scope.isCancelled());
+        }
+        s.shutdown();
+    }
+
+    @Test
+    void testNestedScopeIsCancelledWithParent() throws Exception {
+        MyExecService s = MyExecService.newInstance(3);
+        CountDownLatch nestedStarted = new CountDownLatch(1);
+        CountDownLatch nestedInterrupted = new CountDownLatch(1);
+
+        try (TaskScope scope = s.openScope()) {
+            scope.fork(() -> {
+                try (TaskScope nested = s.openScope()) {
+                    nested.fork(() -> {
+                        nestedStarted.countDown();
+                        return sleepUntilInterrupted(nestedInterrupted);
+                    });
+                    nested.join();
+                }
+                return "nested";
+            });
+            assertTrue(nestedStarted.await(1, TimeUnit.SECONDS));
+            scope.fork(new StringCallable("A", 0, true));
+            assertThrows(ExecutionException.class, scope::join);
+        }
+
+        assertTrue(nestedInterrupted.await(1, TimeUnit.SECONDS));
+        s.shutdown();
+    }
+
+    @Test
+    void testNestedScopeInheritsDeadline() throws Exception {
+        MyExecService s = MyExecService.newInstance(2);
+        CountDownLatch nestedInterrupted = new CountDownLatch(1);
+
+        long t0 = System.nanoTime();
+        try (TaskScope scope = s.openScope(50, TimeUnit.MILLISECONDS)) {
+            Future<Class<?>> nestedOutcome = scope.fork(() -> {
+                try (TaskScope nested = s.openScope()) {
+                    nested.fork(() -> sleepUntilInterrupted(nestedInterrupted));
+                    nested.join();
+                    return null;
+                }
+            });
+            // Neither scope is joined by its owner in time; the deadline alone reaches the nested subtask.
+            assertTrue(nestedInterrupted.await(1, TimeUnit.SECONDS));
+            assertThrows(CancellationException.class, () -> nestedOutcome.get(1, TimeUnit.SECONDS));
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+        assertTrue(elapsedMillis < 1000, "Scope took " + elapsedMillis + " ms to time out");
+        s.shutdown();
+    }
+
+    @Test
+    void testScopeOwnership() throws Exception {
+        MyExecService s = MyExecService.newInstance();
+        TaskScope scope = s.openScope();
+
+        Future<Class<?>> foreignClose = s.submit(() -> {
+            try {
+                scope.close();
+                return null;
+            } catch (RuntimeException e) {
+                return e.getClass();
+            }
+        });
+
+        assertEquals(WrongThreadException.class, foreignClose.get());
+        scope.close();
+        assertThrows(IllegalStateException.class, () -> scope.fork(new StringCallable("A", 0)));
+        s.shutdown();
+    }
+
+    private static String sleepUntilInterrupted(CountDownLatch interrupted) {
+        try {
+            Thread.sleep(5000);
+            return "slept";
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+            return "interrupted";
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package uj.wmii.pwj.exec;
+
+class TestRunnable implements Runnable {
+
+    boolean wasRun;
+    @Override
+    public void run() {
+        wasRun = true;
+    }
+}
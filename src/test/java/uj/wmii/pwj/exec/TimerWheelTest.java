@@ -0,0 +1,85 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimerWheelTest {
+
+    @Test
+    void testTimersFireExactlyOnTheirTick() {
+        TimerWheel<Integer> wheel = new TimerWheel<>(17);
+        Random r = new Random(42);
+        long[] deadlines = new long[10_000];
+        for (int i = 0; i < deadlines.length; i++) {
+            deadlines[i] = 18 + r.nextInt(300_000);
+            wheel.add(i, deadlines[i]);
+        }
+
+        Map<Integer, Long> firedAt = new HashMap<>();
+        for (long tick = 18; tick <= 300_020; tick++) {
+            long now = tick;
+            wheel.advanceTo(tick, i -> assertNull(firedAt.put(i, now), "fired twice: " + i));
+        }
+
+        assertTrue(wheel.isEmpty());
+        for (int i = 0; i < deadlines.length; i++) {
+            assertEquals(deadlines[i], firedAt.get(i));
+        }
+    }
+
+    @Test
+    void testAdvanceInOneStep() {
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        wheel.add("a", 5);
+        wheel.add("b", 70);
+        wheel.add("c", 5_000);
+        wheel.add("d", 300_000);
+        wheel.add("far", 50_000_000);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advanceTo(300_000, fired::add);
+
+        assertEquals(List.of("a", "b", "c", "d"), fired);
+        assertEquals(1, wheel.size());
+        wheel.advanceTo(50_000_000, fired::add);
+        assertEquals("far", fired.get(4));
+    }
+
+    @Test
+    void testPastDeadlineFiresOnNextTick() {
+        TimerWheel<String> wheel = new TimerWheel<>(100);
+        wheel.add("late", 3);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advanceTo(101, fired::add);
+
+        assertEquals(List.of("late"), fired);
+    }
+
+    @Test
+    void testCancelledTimersNeverFire() {
+        TimerWheel<Integer> wheel = new TimerWheel<>(0);
+        List<TimerWheel.Timer<Integer>> timers = new ArrayList<>();
+        for (int i = 0; i < 200_000; i++) {
+            timers.add(wheel.add(i, 1 + i % 10_000));
+        }
+        for (int i = 0; i < timers.size(); i += 2) {
+            wheel.cancel(timers.get(i));
+        }
+        wheel.cancel(timers.get(0));
+        List<Integer> fired = new ArrayList<>();
+
+        wheel.advanceTo(10_000, fired::add);
+
+        assertEquals(100_000, fired.size());
+        assertTrue(fired.stream().allMatch(i -> i % 2 == 1));
+        assertTrue(wheel.isEmpty());
+    }
+}
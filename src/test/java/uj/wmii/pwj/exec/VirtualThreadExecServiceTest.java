@@ -0,0 +1,110 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VirtualThreadExecServiceTest {
+
+    @Test
+    void testBlockingTasksRunConcurrently() throws Exception {
+        VirtualThreadExecService s = VirtualThreadExecService.newInstance();
+        List<Future<String>> futures = new ArrayList<>();
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < 1_000; i++) {
+            futures.add(s.submit(new StringCallable("R" + i, 200)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("R" + i, futures.get(i).get());
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+        assertTrue(elapsedMillis < 2000, "1000 blocking tasks took " + elapsedMillis + " ms");
+        s.shutdown();
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testTasksRunOnVirtualThreads() throws Exception {
+        VirtualThreadExecService s = VirtualThreadExecService.newInstance();
+
+        assertTrue(s.submit(() -> Thread.currentThread().isVirtual()).get());
+        s.shutdown();
+    }
+
+    @Test
+    void testConcurrencyCap() throws Exception {
+        VirtualThreadExecService s = VirtualThreadExecService.newInstance(3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 30; i++) {
+            futures.add(s.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                ExecServiceTest.doSleep(20);
+                running.decrementAndGet();
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+
+        assertEquals(3, maxRunning.get());
+        s.shutdown();
+    }
+
+    @Test
+    void testShutdownWaitsForRunningTasks() throws Exception {
+        VirtualThreadExecService s = VirtualThreadExecService.newInstance();
+        Future<String> f = s.submit(new StringCallable("A", 200));
+        s.shutdown();
+
+        assertThrows(RejectedExecutionException.class, () -> s.submit(new TestRunnable()));
+        assertFalse(s.awaitTermination(50, TimeUnit.MILLISECONDS));
+        assertFalse(s.isTerminated());
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+        assertTrue(s.isTerminated());
+        assertEquals("A", f.get());
+    }
+
+    @Test
+    void testShutdownIdleTerminatesImmediately() {
+        VirtualThreadExecService s = VirtualThreadExecService.newInstance();
+        s.shutdown();
+
+        assertTrue(s.isTerminated());
+    }
+
+    @Test
+    void testShutdownNowReturnsTasksWaitingForPermit() throws Exception {
+        VirtualThreadExecService s = VirtualThreadExecService.newInstance(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Future<?> running = s.submit(() -> {
+            started.countDown();
+            ExecServiceTest.doSleep(5000);
+        });
+        started.await();
+        Future<String> fB = s.submit(new StringCallable("B", 5));
+        Future<String> fC = s.submit(new StringCallable("C", 5));
+        ExecServiceTest.doSleep(50);
+
+        List<Runnable> pending = s.shutdownNow();
+
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+        assertEquals(2, pending.size());
+        assertTrue(pending.contains(fB));
+        assertTrue(pending.contains(fC));
+        assertFalse(fB.isDone());
+        assertTrue(running.isDone());
+    }
+}
@@ -0,0 +1,165 @@
+package uj.wmii.pwj.exec;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkStealingExecServiceTest {
+
+    @Test
+    void testSubmitCallable() throws Exception {
+        WorkStealingExecService s = WorkStealingExecService.newInstance(2);
+        Future<String> f = s.submit(new StringCallable("Hello", 10));
+
+        assertEquals("Hello", f.get(1000, TimeUnit.MILLISECONDS));
+        s.shutdown();
+    }
+
+    @Test
+    void testInvokeAll() throws Exception {
+        WorkStealingExecService s = WorkStealingExecService.newInstance(3);
+        List<Callable<String>> list = new ArrayList<>();
+        list.add(new StringCallable("A", 5));
+        list.add(new StringCallable("B", 5, true));
+        list.add(new StringCallable("C", 5));
+
+        List<Future<String>> results = s.invokeAll(list);
+
+        assertEquals("A", results.get(0).get());
+        assertThrows(ExecutionException.class, results.get(1)::get);
+        assertEquals("C", results.get(2).get());
+        s.shutdown();
+    }
+
+    @Test
+    void testRecursiveSplittingWithFewWorkers() throws Exception {
+        WorkStealingExecService s = WorkStealingExecService.newInstance(2);
+
+        long sum = s.join(s.submit(new RangeSum(s, 0, 1_000_000)));
+
+        assertEquals(999_999L * 1_000_000L / 2, sum);
+        s.shutdown();
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testSubtasksStayOnForkingWorkerUntilStolen() throws Exception {
+        WorkStealingExecService s = WorkStealingExecService.newInstance(1);
+
+        String worker = s.submit(() -> {
+            Future<String> child = s.submit(() -> Thread.currentThread().getName());
+            return s.join(child);
+        }).get(1000, TimeUnit.MILLISECONDS);
+
+        assertEquals("WorkStealingExecService worker-0", worker);
+        s.shutdown();
+    }
+
+    @Test
+    void testJoinParksUntilAwaitedTaskFinishes() throws Exception {
+        WorkStealingExecService s = WorkStealingExecService.newInstance(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> joiner = new AtomicReference<>();
+        Future<String> slow = s.submit(() -> {
+            release.await();
+            return "slow";
+        });
+        Future<String> joined = s.submit(() -> {
+            joiner.set(Thread.currentThread());
+            return s.join(slow);
+        });
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (joiner.get() == null || joiner.get().getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(System.nanoTime() < deadline, "joining worker never parked");
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        assertEquals("slow", joined.get(1000, TimeUnit.MILLISECONDS));
+        s.shutdown();
+    }
+
+    @Test
+    void testShutdownLetsRunningTreeFinish() throws Exception {
+        WorkStealingExecService s = WorkStealingExecService.newInstance(2);
+        Future<Long> f = s.submit(() -> {
+            ExecServiceTest.doSleep(100);
+            return s.join(s.submit(new RangeSum(s, 0, 10_000)));
+        });
+        s.shutdown();
+
+        assertThrows(RejectedExecutionException.class, () -> s.submit(new TestRunnable()));
+        assertEquals(9_999L * 10_000L / 2, f.get(1000, TimeUnit.MILLISECONDS));
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+        assertTrue(s.isTerminated());
+    }
+
+    @Test
+    void testSubmitAllFromOutsideAndInsideWorkers() throws Exception {
+        WorkStealingExecService s = WorkStealingExecService.newInstance(2);
+        List<Callable<Long>> ranges = List.of(new RangeSum(s, 0, 5_000), new RangeSum(s, 5_000, 10_000));
+
+        long outside = 0;
+        for (Future<Long> f : s.submitAll(ranges)) {
+            outside += f.get(1000, TimeUnit.MILLISECONDS);
+        }
+        long inside = s.submit(() -> {
+            long sum = 0;
+            for (Future<Long> f : s.submitAll(ranges)) {
+                sum += s.join(f);
+            }
+            return sum;
+        }).get(1000, TimeUnit.MILLISECONDS);
+
+        assertEquals(9_999L * 10_000L / 2, outside);
+        assertEquals(outside, inside);
+        s.shutdown();
+    }
+
+    @Test
+    void testShutdownNowReturnsPendingTasks() throws Exception {
+        WorkStealingExecService s = WorkStealingExecService.newInstance(1);
+        Future<String> running = s.submit(new StringCallable("A", 500));
+        ExecServiceTest.doSleep(50);
+        Future<String> fB = s.submit(new StringCallable("B", 500));
+        Future<String> fC = s.submit(new StringCallable("C", 500));
+
+        List<Runnable> pending = s.shutdownNow();
+
+        assertTrue(s.awaitTermination(1000, TimeUnit.MILLISECONDS));
+        assertTrue(s.isTerminated());
+        assertEquals(List.of(fB, fC), pending);
+        assertThrows(ExecutionException.class, running::get);
+    }
+}
+
+record RangeSum(WorkStealingExecService s, long from, long to) implements Callable<Long> {
+
+    private static final long THRESHOLD = 1_000;
+
+    @Override
+    public Long call() throws Exception {
+        if (to - from <= THRESHOLD) {
+            long sum = 0;
+            for (long i = from; i < to; i++) {
+                sum += i;
+            }
+            return sum;
+        }
+        long mid = (from + to) >>> 1;
+        Future<Long> left = s.submit(new RangeSum(s, from, mid));
+        Future<Long> right = s.submit(new RangeSum(s, mid, to));
+        return s.join(right) + s.join(left);
+    }
+}